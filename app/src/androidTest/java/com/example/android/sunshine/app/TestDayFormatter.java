@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/*
+    Checks that the friendly day strings built with DayFormatter's cached formatters are the
+    ones Utility used to build from scratch, across locales and time zones, and benchmarks the
+    two.  Filter logcat on TestDayFormatter to read the numbers.
+ */
+public class TestDayFormatter extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDayFormatter.class.getSimpleName();
+
+    private static final long HOUR_IN_MILLIS = 1000 * 60 * 60;
+    private static final long DAY_IN_MILLIS = HOUR_IN_MILLIS * 24;
+    private static final Locale[] LOCALES = {Locale.US, Locale.FRANCE, Locale.JAPAN};
+    private static final String[] TIME_ZONES = {"UTC", "America/Los_Angeles", "Asia/Kolkata"};
+    private static final int ITERATIONS = 2000;
+    private static final int ROUNDS = 5;
+
+    private Locale mDefaultLocale;
+    private TimeZone mDefaultTimeZone;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDefaultLocale = Locale.getDefault();
+        mDefaultTimeZone = TimeZone.getDefault();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Locale.setDefault(mDefaultLocale);
+        TimeZone.setDefault(mDefaultTimeZone);
+        super.tearDown();
+    }
+
+    public void testSameStrings() {
+        for (Locale locale : LOCALES) {
+            for (String timeZone : TIME_ZONES) {
+                Locale.setDefault(locale);
+                TimeZone.setDefault(TimeZone.getTimeZone(timeZone));
+                long start = System.currentTimeMillis() - 3 * DAY_IN_MILLIS;
+                for (long date = start; date < start + 20 * DAY_IN_MILLIS; date += 5 * HOUR_IN_MILLIS) {
+                    String where = " for " + date + " in " + locale + ", " + timeZone;
+                    assertEquals("Error: Long friendly day string differs" + where,
+                            legacyFriendlyDayString(mContext, date, true),
+                            Utility.getFriendlyDayString(mContext, date, true));
+                    assertEquals("Error: Friendly day string differs" + where,
+                            legacyFriendlyDayString(mContext, date, false),
+                            Utility.getFriendlyDayString(mContext, date, false));
+                    assertEquals("Error: Full friendly day string differs" + where,
+                            legacyFullFriendlyDayString(mContext, date),
+                            Utility.getFullFriendlyDayString(mContext, date));
+                }
+            }
+        }
+    }
+
+    public void testTimeZoneChange() {
+        TimeZone.setDefault(TimeZone.getTimeZone("Pacific/Kiritimati"));
+        long now = System.currentTimeMillis();
+        Utility.getFriendlyDayString(mContext, now, true);
+
+        // 25 hours apart: "today" is a different day in the other zone.
+        TimeZone.setDefault(TimeZone.getTimeZone("Pacific/Pago_Pago"));
+        assertEquals("Error: Today was not recomputed for the new time zone",
+                legacyDayName(mContext, now), Utility.getDayName(mContext, now));
+        assertEquals(legacyFormattedMonthDay(now), Utility.getFormattedMonthDay(mContext, now));
+    }
+
+    public void testBenchmark() {
+        long start = System.currentTimeMillis();
+
+        // Warm up both paths, so that neither pays for class loading or the JIT in the rounds.
+        timeLegacy(start);
+        timeCached(start);
+
+        long[] legacyNanos = new long[ROUNDS];
+        long[] cachedNanos = new long[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            // Alternated, so that neither path always runs right after the other.
+            if (round % 2 == 0) {
+                legacyNanos[round] = timeLegacy(start);
+                cachedNanos[round] = timeCached(start);
+            } else {
+                cachedNanos[round] = timeCached(start);
+                legacyNanos[round] = timeLegacy(start);
+            }
+        }
+        long legacyMedian = median(legacyNanos);
+        long cachedMedian = median(cachedNanos);
+
+        Log.d(LOG_TAG, "Friendly day string: " + legacyMedian / ITERATIONS + "ns before, "
+                + cachedMedian / ITERATIONS + "ns with cached formatters");
+        // The legacy path builds a Time and a SimpleDateFormat every call, the gap is wide.
+        assertTrue("Error: Cached formatting is not at least twice as fast as building formatters"
+                + " every time", cachedMedian < legacyMedian / 2);
+    }
+
+    private long timeLegacy(long start) {
+        long legacyStart = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < ITERATIONS; i++) {
+            legacyFriendlyDayString(mContext, start + (i % 14) * DAY_IN_MILLIS, i % 14 == 0);
+        }
+        return SystemClock.elapsedRealtimeNanos() - legacyStart;
+    }
+
+    private long timeCached(long start) {
+        long cachedStart = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < ITERATIONS; i++) {
+            Utility.getFriendlyDayString(mContext, start + (i % 14) * DAY_IN_MILLIS, i % 14 == 0);
+        }
+        return SystemClock.elapsedRealtimeNanos() - cachedStart;
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    // What Utility used to do, kept here as the reference.
+
+    private static String legacyFriendlyDayString(Context context, long dateInMillis,
+                                                  boolean displayLongToday) {
+        Time time = new Time();
+        time.setToNow();
+        long currentTime = System.currentTimeMillis();
+        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
+        int currentJulianDay = Time.getJulianDay(currentTime, time.gmtoff);
+
+        if (displayLongToday && julianDay == currentJulianDay) {
+            String today = context.getString(R.string.today);
+            int formatId = R.string.format_full_friendly_date;
+            return String.format(context.getString(
+                    formatId,
+                    today,
+                    legacyFormattedMonthDay(dateInMillis)));
+        } else if ( julianDay < currentJulianDay + 7 ) {
+            return legacyDayName(context, dateInMillis);
+        } else {
+            SimpleDateFormat shortenedDateFormat = new SimpleDateFormat("EEE MMM dd");
+            return shortenedDateFormat.format(dateInMillis);
+        }
+    }
+
+    private static String legacyFullFriendlyDayString(Context context, long dateInMillis) {
+        String day = legacyDayName(context, dateInMillis);
+        int formatId = R.string.format_full_friendly_date;
+        return String.format(context.getString(
+                formatId,
+                day,
+                legacyFormattedMonthDay(dateInMillis)));
+    }
+
+    private static String legacyDayName(Context context, long dateInMillis) {
+        Time t = new Time();
+        t.setToNow();
+        int julianDay = Time.getJulianDay(dateInMillis, t.gmtoff);
+        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), t.gmtoff);
+        if (julianDay == currentJulianDay) {
+            return context.getString(R.string.today);
+        } else if ( julianDay == currentJulianDay +1 ) {
+            return context.getString(R.string.tomorrow);
+        } else {
+            SimpleDateFormat dayFormat = new SimpleDateFormat("EEEE");
+            return dayFormat.format(dateInMillis);
+        }
+    }
+
+    private static String legacyFormattedMonthDay(long dateInMillis) {
+        SimpleDateFormat monthDayFormat = new SimpleDateFormat("MMMM dd");
+        return monthDayFormat.format(dateInMillis);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+public class TestWeatherConditions extends AndroidTestCase {
+
+    public void testGroupBoundaries() {
+        assertEquals(WeatherConditions.GROUP_UNKNOWN, WeatherConditions.getGroup(199));
+        assertEquals(WeatherConditions.GROUP_STORM, WeatherConditions.getGroup(200));
+        assertEquals(WeatherConditions.GROUP_STORM, WeatherConditions.getGroup(232));
+        assertEquals(WeatherConditions.GROUP_UNKNOWN, WeatherConditions.getGroup(233));
+        assertEquals(WeatherConditions.GROUP_SNOW, WeatherConditions.getGroup(511));
+        assertEquals(WeatherConditions.GROUP_UNKNOWN, WeatherConditions.getGroup(510));
+        // 761 is dust: fog art, not the storm art of 781
+        assertEquals(WeatherConditions.GROUP_FOG, WeatherConditions.getGroup(761));
+        assertEquals(WeatherConditions.GROUP_TORNADO, WeatherConditions.getGroup(781));
+        assertEquals(WeatherConditions.GROUP_CLOUDS, WeatherConditions.getGroup(804));
+        assertEquals(WeatherConditions.GROUP_UNKNOWN, WeatherConditions.getGroup(962));
+        assertEquals(WeatherConditions.GROUP_UNKNOWN, WeatherConditions.getGroup(-1));
+        assertEquals(WeatherConditions.GROUP_UNKNOWN, WeatherConditions.getGroup(Integer.MAX_VALUE));
+    }
+
+    public void testResources() {
+        assertEquals(R.drawable.ic_storm, Utility.getIconResourceForWeatherCondition(781));
+        assertEquals(R.drawable.art_fog, Utility.getArtResourceForWeatherCondition(761));
+        assertEquals(R.drawable.ic_cloudy, Utility.getIconResourceForWeatherCondition(803));
+        assertEquals(-1, Utility.getIconResourceForWeatherCondition(900));
+        assertEquals(-1, Utility.getArtResourceForWeatherCondition(100));
+        assertNull(Utility.getImageUrlForWeatherCondition(900));
+        assertTrue(Utility.getImageUrlForWeatherCondition(781).contains("Raised_dust"));
+    }
+
+    public void testStrings() {
+        assertEquals(mContext.getString(R.string.condition_2xx),
+                Utility.getStringForWeatherCondition(mContext, 211));
+        assertEquals(mContext.getString(R.string.condition_521),
+                Utility.getStringForWeatherCondition(mContext, 521));
+        assertEquals(mContext.getString(R.string.condition_962),
+                Utility.getStringForWeatherCondition(mContext, 962));
+        assertEquals(mContext.getString(R.string.condition_unknown, 963),
+                Utility.getStringForWeatherCondition(mContext, 963));
+        assertEquals(mContext.getString(R.string.condition_unknown, 505),
+                Utility.getStringForWeatherCondition(mContext, 505));
+    }
+}
@@ -55,6 +55,7 @@ public class TestDb extends AndroidTestCase {
         final HashSet<String> tableNameHashSet = new HashSet<String>();
         tableNameHashSet.add(WeatherContract.LocationEntry.TABLE_NAME);
         tableNameHashSet.add(WeatherContract.WeatherEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.ArchiveEntry.TABLE_NAME);
 
         mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
         SQLiteDatabase db = new WeatherDbHelper(
@@ -234,4 +235,43 @@ public class TestDb extends AndroidTestCase {
         db.close();
         return locationRowId;
     }
+
+    /*
+        With write-ahead logging a reader on another thread must not wait for an open write
+        transaction, it sees the last committed data instead.
+     */
+    public void testReadDuringWriteTransaction() throws Throwable {
+        final long locationRowId = insertLocation();
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext, true);
+        final SQLiteDatabase db = dbHelper.getWritableDatabase();
+        assertTrue("Error: The database is not in write-ahead logging mode",
+                db.isWriteAheadLoggingEnabled());
+
+        db.beginTransactionNonExclusive();
+        try {
+            db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null,
+                    TestUtilities.createWeatherValues(locationRowId));
+
+            final int[] readCount = {-1};
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Cursor c = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                            null, null, null, null, null, null);
+                    readCount[0] = c.getCount();
+                    c.close();
+                }
+            });
+            reader.start();
+            reader.join(2000);
+
+            assertFalse("Error: The read was blocked by the write transaction", reader.isAlive());
+            assertEquals("Error: The read saw uncommitted data", 0, readCount[0]);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        dbHelper.close();
+    }
 }
@@ -24,6 +24,7 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
 import android.test.AndroidTestCase;
 import android.util.Log;
 
@@ -512,4 +513,270 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    // bulkInsert should only write, count and announce rows that actually changed.
+    public void testBulkInsertSkipsUnchangedRows() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        int insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, insertCount);
+
+        // The exact same forecast again changes nothing.
+        insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+        assertEquals("Error: Unchanged rows were counted as inserted", 0, insertCount);
+
+        // Change a single day.
+        ContentValues[] changedValues = createBulkInsertWeatherValues(locationRowId);
+        changedValues[3].put(WeatherEntry.COLUMN_MAX_TEMP, 99.5);
+        insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, changedValues);
+        assertEquals("Error: Only the changed row should be written", 1, insertCount);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.moveToFirst();
+        for ( int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext() ) {
+            TestUtilities.validateCurrentRecord("testBulkInsertSkipsUnchangedRows.  Error validating WeatherEntry " + i,
+                    cursor, changedValues[i]);
+        }
+        cursor.close();
+    }
+
+    // Per-location queries are answered from memory, and must still see every committed write.
+    public void testCachedLocationQueries() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+
+        String[] projection = {
+                WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+                WeatherEntry.COLUMN_DATE,
+                WeatherEntry.COLUMN_MAX_TEMP,
+                LocationEntry.COLUMN_LOCATION_SETTING
+        };
+        Uri startDateUri = WeatherEntry.buildWeatherLocationWithStartDate(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE);
+        Uri dateUri = WeatherEntry.buildWeatherLocationWithDate(
+                TestUtilities.TEST_LOCATION, bulkInsertContentValues[3].getAsLong(WeatherEntry.COLUMN_DATE));
+
+        // Twice, the second time from memory.
+        for (int i = 0; i < 2; i++) {
+            Cursor cursor = mContext.getContentResolver().query(startDateUri, projection, null, null,
+                    WeatherEntry.COLUMN_DATE + " ASC");
+            assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+            cursor.moveToFirst();
+            for (int day = 0; day < BULK_INSERT_RECORDS_TO_INSERT; day++, cursor.moveToNext()) {
+                assertEquals(bulkInsertContentValues[day].getAsLong(WeatherEntry.COLUMN_DATE).longValue(),
+                        cursor.getLong(1));
+                assertEquals(bulkInsertContentValues[day].getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                        cursor.getDouble(2));
+                assertEquals(TestUtilities.TEST_LOCATION, cursor.getString(3));
+            }
+            cursor.close();
+        }
+
+        // A change to one day has to show up in both kinds of query.
+        ContentValues[] changedValues = createBulkInsertWeatherValues(locationRowId);
+        changedValues[3].put(WeatherEntry.COLUMN_MAX_TEMP, 99.5);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, changedValues);
+
+        Cursor cursor = mContext.getContentResolver().query(dateUri, projection, null, null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals("Error: A cached day was not invalidated by the write",
+                99.5, cursor.getDouble(2));
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(startDateUri, projection, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        assertTrue(cursor.moveToPosition(3));
+        assertEquals(99.5, cursor.getDouble(2));
+        cursor.close();
+    }
+
+    // Every screen reading a location's days from memory gets the same LocationForecast.
+    public void testLocationForecastIsShared() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+
+        Uri startDateUri = WeatherEntry.buildWeatherLocationWithStartDate(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE);
+        Cursor listCursor = mContext.getContentResolver().query(startDateUri,
+                new String[]{WeatherEntry.COLUMN_DATE, WeatherEntry.COLUMN_MAX_TEMP},
+                null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        Cursor widgetCursor = mContext.getContentResolver().query(startDateUri,
+                new String[]{WeatherEntry.COLUMN_WEATHER_ID, WeatherEntry.COLUMN_SHORT_DESC},
+                null, null, WeatherEntry.COLUMN_DATE + " ASC");
+
+        LocationForecast forecast = LocationForecast.from(listCursor);
+        assertSame("Error: Two cursors on the same days decoded them twice",
+                forecast, LocationForecast.from(widgetCursor));
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, forecast.getCount());
+        assertEquals(locationRowId, forecast.getLocationId());
+        assertEquals(TestUtilities.TEST_LOCATION, forecast.getLocationSetting());
+        for (int day = 0; day < BULK_INSERT_RECORDS_TO_INSERT; day++) {
+            assertEquals(bulkInsertContentValues[day].getAsLong(WeatherEntry.COLUMN_DATE).longValue(),
+                    forecast.getDate(day));
+            assertEquals(bulkInsertContentValues[day].getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                    forecast.getMaxTemp(day));
+        }
+        assertEquals(3, forecast.indexOfDate(forecast.getDate(3)));
+        listCursor.close();
+        widgetCursor.close();
+    }
+
+    // Pruning removes old days a chunk at a time, and can keep a compact copy of them.
+    public void testPruneWeather() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.delete(WeatherContract.ArchiveEntry.TABLE_NAME, null, null);
+
+        // Drop the first 5 days, 2 rows at a time.
+        final int prunedDays = 5;
+        Bundle extras = new Bundle();
+        extras.putLong(WeatherContract.EXTRA_CUTOFF_DATE,
+                bulkInsertContentValues[prunedDays - 1].getAsLong(WeatherEntry.COLUMN_DATE));
+        extras.putInt(WeatherContract.EXTRA_CHUNK_SIZE, 2);
+        extras.putBoolean(WeatherContract.EXTRA_ARCHIVE, true);
+        int[] expectedChunks = {2, 2, 1, 0};
+        for (int expected : expectedChunks) {
+            Bundle result = mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                    WeatherContract.METHOD_PRUNE_WEATHER, null, extras);
+            assertEquals("Error: Pruning didn't respect the chunk size",
+                    expected, result.getInt(WeatherContract.EXTRA_ROWS_CHANGED));
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT - prunedDays, cursor.getCount());
+        cursor.moveToFirst();
+        TestUtilities.validateCurrentRecord("testPruneWeather.  Error validating first day kept",
+                cursor, bulkInsertContentValues[prunedDays]);
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(WeatherContract.ArchiveEntry.CONTENT_URI,
+                null, null, null, WeatherContract.ArchiveEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: Pruned days were not archived", prunedDays, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals(bulkInsertContentValues[0].getAsLong(WeatherEntry.COLUMN_DATE).longValue(),
+                cursor.getLong(cursor.getColumnIndex(WeatherContract.ArchiveEntry.COLUMN_DATE)));
+        cursor.close();
+
+        db.delete(WeatherContract.ArchiveEntry.TABLE_NAME, null, null);
+        dbHelper.close();
+    }
+
+    // A write should only wake up observers of the location and days it touched.
+    public void testBulkInsertNotifiesChangedDaysOnly() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+
+        ContentValues[] changedValues = createBulkInsertWeatherValues(locationRowId);
+        changedValues[3].put(WeatherEntry.COLUMN_MAX_TEMP, 99.5);
+        long changedDate = changedValues[3].getAsLong(WeatherEntry.COLUMN_DATE);
+        long unchangedDate = changedValues[4].getAsLong(WeatherEntry.COLUMN_DATE);
+
+        TestUtilities.TestContentObserver changedDayObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION, changedDate),
+                true, changedDayObserver);
+        TestUtilities.TestContentObserver unchangedDayObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION, unchangedDate),
+                true, unchangedDayObserver);
+        TestUtilities.TestContentObserver otherLocationObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION + "0"),
+                true, otherLocationObserver);
+
+        int insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, changedValues);
+        assertEquals(1, insertCount);
+
+        changedDayObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(changedDayObserver);
+        mContext.getContentResolver().unregisterContentObserver(unchangedDayObserver);
+        mContext.getContentResolver().unregisterContentObserver(otherLocationObserver);
+        unchangedDayObserver.mHT.quit();
+        otherLocationObserver.mHT.quit();
+
+        assertFalse("Error: An observer of an unchanged day was notified",
+                unchangedDayObserver.mContentChanged);
+        assertFalse("Error: An observer of another location was notified",
+                otherLocationObserver.mContentChanged);
+    }
+
+    // The typed batch path has to store exactly what the ContentValues path stores.
+    public void testBulkInsertWeatherBatch() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] expectedValues = createBulkInsertWeatherValues(locationRowId);
+        WeatherBatch batch = new WeatherBatch(expectedValues.length);
+        for (ContentValues value : expectedValues) {
+            batch.add(value.getAsLong(WeatherEntry.COLUMN_LOC_KEY),
+                    value.getAsLong(WeatherEntry.COLUMN_DATE),
+                    value.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID),
+                    value.getAsString(WeatherEntry.COLUMN_SHORT_DESC),
+                    value.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP),
+                    value.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                    value.getAsDouble(WeatherEntry.COLUMN_HUMIDITY),
+                    value.getAsDouble(WeatherEntry.COLUMN_PRESSURE),
+                    value.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED),
+                    value.getAsDouble(WeatherEntry.COLUMN_DEGREES));
+            // The provider stores normalized dates
+            value.put(WeatherEntry.COLUMN_DATE,
+                    WeatherContract.normalizeDate(value.getAsLong(WeatherEntry.COLUMN_DATE)));
+        }
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true, weatherObserver);
+
+        int insertCount = batch.bulkInsert(mContext.getContentResolver());
+
+        weatherObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, insertCount);
+        assertEquals("Error: An unchanged batch should not write anything",
+                0, batch.bulkInsert(mContext.getContentResolver()));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.moveToFirst();
+        for ( int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext() ) {
+            TestUtilities.validateCurrentRecord("testBulkInsertWeatherBatch.  Error validating WeatherEntry " + i,
+                    cursor, expectedValues[i]);
+        }
+        cursor.close();
+    }
 }
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Checks that the weather/location join is served by an index, and benchmarks it.  The
+    benchmark logs the EXPLAIN QUERY PLAN output and the average latency of the by-location
+    and by-location-and-date queries as the stored history grows; filter logcat on
+    TestQueryPlan to read the numbers.
+ */
+public class TestQueryPlan extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestQueryPlan.class.getSimpleName();
+
+    private static final int LOCATIONS = 10;
+    private static final int[] HISTORY_DAYS = {14, 90, 365, 1825};
+    private static final int ITERATIONS = 50;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private WeatherDbHelper mDbHelper;
+    private SQLiteDatabase mDb;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDbHelper = new WeatherDbHelper(mContext);
+        mDb = mDbHelper.getWritableDatabase();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDbHelper.close();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testIndexCreated() {
+        Cursor c = mDb.rawQuery("SELECT name FROM sqlite_master WHERE type='index' AND name=?",
+                new String[]{WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE});
+        assertTrue("Error: The weather location/date index was not created", c.moveToFirst());
+        c.close();
+    }
+
+    public void testQueryPlansUseIndex() {
+        insertHistory(HISTORY_DAYS[0]);
+
+        String plan = explain(byLocationWithStartDateSql(),
+                locationSetting(0), Long.toString(TestUtilities.TEST_DATE));
+        assertTrue("Error: by-location query doesn't use the index: " + plan,
+                plan.contains(WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE));
+
+        // With both columns pinned SQLite may pick either the new index or the UNIQUE one,
+        // what matters is that it never walks the whole weather table.
+        plan = explain(byLocationAndDateSql(),
+                locationSetting(0), Long.toString(TestUtilities.TEST_DATE));
+        assertFalse("Error: by-location-and-date query scans the weather table: " + plan,
+                plan.matches(".*SCAN (TABLE )?" + WeatherEntry.TABLE_NAME + "\\b.*"));
+    }
+
+    public void testQueryLatencyAsHistoryGrows() {
+        int storedDays = 0;
+        for (int days : HISTORY_DAYS) {
+            insertHistory(storedDays, days);
+            storedDays = days;
+            mDb.execSQL("ANALYZE");
+
+            String location = locationSetting(LOCATIONS / 2);
+            String startDate = Long.toString(TestUtilities.TEST_DATE + (days - 14) * DAY_IN_MILLIS);
+            String date = Long.toString(TestUtilities.TEST_DATE + (days - 1) * DAY_IN_MILLIS);
+
+            Log.i(LOG_TAG, days + " days x " + LOCATIONS + " locations: by location "
+                    + averageMicros(byLocationWithStartDateSql(), location, startDate) + "us "
+                    + explain(byLocationWithStartDateSql(), location, startDate));
+            Log.i(LOG_TAG, days + " days x " + LOCATIONS + " locations: by location and date "
+                    + averageMicros(byLocationAndDateSql(), location, date) + "us "
+                    + explain(byLocationAndDateSql(), location, date));
+        }
+    }
+
+    private static String byLocationWithStartDateSql() {
+        return WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(null,
+                WeatherProvider.sLocationSettingWithStartDateSelection, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC", null);
+    }
+
+    private static String byLocationAndDateSql() {
+        return WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(null,
+                WeatherProvider.sLocationSettingAndDaySelection, null, null, null, null);
+    }
+
+    private String explain(String sql, String... args) {
+        StringBuilder plan = new StringBuilder();
+        Cursor c = mDb.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        int detailIndex = c.getColumnIndex("detail");
+        while (c.moveToNext()) {
+            plan.append('[').append(c.getString(detailIndex)).append(']');
+        }
+        c.close();
+        return plan.toString();
+    }
+
+    private long averageMicros(String sql, String... args) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < ITERATIONS; i++) {
+            Cursor c = mDb.rawQuery(sql, args);
+            // Make sure the rows are actually read, not just the statement prepared.
+            c.getCount();
+            c.close();
+        }
+        return (SystemClock.elapsedRealtimeNanos() - start) / ITERATIONS / 1000;
+    }
+
+    private static String locationSetting(int i) {
+        return TestUtilities.TEST_LOCATION + i;
+    }
+
+    private void insertHistory(int days) {
+        insertHistory(0, days);
+    }
+
+    // Adds days [fromDay, toDay) for every location, creating the locations on the first call.
+    private void insertHistory(int fromDay, int toDay) {
+        mDb.beginTransaction();
+        try {
+            for (int l = 0; l < LOCATIONS; l++) {
+                long locationId;
+                Cursor c = mDb.query(LocationEntry.TABLE_NAME, new String[]{LocationEntry._ID},
+                        LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                        new String[]{locationSetting(l)}, null, null, null);
+                if (c.moveToFirst()) {
+                    locationId = c.getLong(0);
+                } else {
+                    ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+                    locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting(l));
+                    locationId = mDb.insert(LocationEntry.TABLE_NAME, null, locationValues);
+                }
+                c.close();
+
+                ContentValues weatherValues = TestUtilities.createWeatherValues(locationId);
+                for (int d = fromDay; d < toDay; d++) {
+                    weatherValues.put(WeatherEntry.COLUMN_DATE,
+                            TestUtilities.TEST_DATE + d * DAY_IN_MILLIS);
+                    mDb.insert(WeatherEntry.TABLE_NAME, null, weatherValues);
+                }
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+}
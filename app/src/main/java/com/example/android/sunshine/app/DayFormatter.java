@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.text.format.Time;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * The date formats and the notion of "today" behind {@link Utility}'s friendly day strings,
+ * kept between calls instead of being rebuilt for every row.
+ * <p>
+ * Formatters are per thread, since SimpleDateFormat isn't thread safe, and are rebuilt when the
+ * default locale or time zone changes.  Today is shared, and recomputed at midnight, on a
+ * daylight saving shift, or when the time zone changes.
+ */
+final class DayFormatter {
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private static volatile Today sToday;
+
+    private static final ThreadLocal<Formats> sFormats = new ThreadLocal<Formats>();
+
+    private DayFormatter() {
+    }
+
+    /**
+     * The current day, and the UTC offset days are computed with, as {@link Time#setToNow()}
+     * would give them.
+     */
+    static final class Today {
+        final String timeZoneId;
+        final long gmtoff;
+        final int julianDay;
+        // The span of time over which julianDay and gmtoff hold.
+        private final long mValidFrom;
+        private final long mValidUntil;
+
+        private Today(TimeZone timeZone, long now) {
+            timeZoneId = timeZone.getID();
+            long offsetMillis = timeZone.getOffset(now);
+            gmtoff = offsetMillis / 1000;
+            julianDay = Time.getJulianDay(now, gmtoff);
+            mValidFrom = (julianDay - Time.EPOCH_JULIAN_DAY) * DAY_IN_MILLIS - offsetMillis;
+            long validUntil = mValidFrom + DAY_IN_MILLIS;
+            if (timeZone.getOffset(validUntil - 1) != offsetMillis) {
+                // Daylight saving starts or ends today: only good until the switch.
+                long from = now;
+                long to = validUntil - 1;
+                while (to - from > 1) {
+                    long middle = from + (to - from) / 2;
+                    if (timeZone.getOffset(middle) == offsetMillis) {
+                        from = middle;
+                    } else {
+                        to = middle;
+                    }
+                }
+                validUntil = to;
+            }
+            mValidUntil = validUntil;
+        }
+
+        private boolean isValid(TimeZone timeZone, long now) {
+            return now >= mValidFrom && now < mValidUntil && timeZoneId.equals(timeZone.getID());
+        }
+
+        /**
+         * @return the julian day of {@code dateInMillis}, at today's UTC offset.
+         */
+        int getJulianDay(long dateInMillis) {
+            return Time.getJulianDay(dateInMillis, gmtoff);
+        }
+    }
+
+    private static final class Formats {
+        final Locale locale;
+        final String timeZoneId;
+        final SimpleDateFormat shortenedDate = new SimpleDateFormat("EEE MMM dd");
+        final SimpleDateFormat dayName = new SimpleDateFormat("EEEE");
+        final SimpleDateFormat monthDay = new SimpleDateFormat("MMMM dd");
+
+        Formats(Locale locale, String timeZoneId) {
+            this.locale = locale;
+            this.timeZoneId = timeZoneId;
+        }
+    }
+
+    static Today today() {
+        long now = System.currentTimeMillis();
+        TimeZone timeZone = TimeZone.getDefault();
+        Today today = sToday;
+        if (today == null || !today.isValid(timeZone, now)) {
+            today = new Today(timeZone, now);
+            sToday = today;
+        }
+        return today;
+    }
+
+    /**
+     * @return the date in the form "Mon Jun 03".
+     */
+    static String formatShortenedDate(long dateInMillis) {
+        return formats().shortenedDate.format(dateInMillis);
+    }
+
+    /**
+     * @return the day of the week, e.g "Wednesday".
+     */
+    static String formatDayName(long dateInMillis) {
+        return formats().dayName.format(dateInMillis);
+    }
+
+    /**
+     * @return the date in the form "June 24".
+     */
+    static String formatMonthDay(long dateInMillis) {
+        return formats().monthDay.format(dateInMillis);
+    }
+
+    private static Formats formats() {
+        Locale locale = Locale.getDefault();
+        String timeZoneId = TimeZone.getDefault().getID();
+        Formats formats = sFormats.get();
+        if (formats == null || !formats.locale.equals(locale)
+                || !formats.timeZoneId.equals(timeZoneId)) {
+            // SimpleDateFormat picks up the default locale and time zone when it's created.
+            formats = new Formats(locale, timeZoneId);
+            sFormats.set(formats);
+        }
+        return formats;
+    }
+}
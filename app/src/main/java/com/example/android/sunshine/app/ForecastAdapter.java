@@ -20,6 +20,7 @@ import android.database.Cursor;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.view.ViewCompat;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -30,11 +31,13 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.LocationForecast;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
  * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * Rows are bound from the cursor's {@link LocationForecast}, not from the cursor itself, with
+ * their text formatted ahead of time by the {@link ForecastLoader}.
  */
 public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
@@ -45,6 +48,8 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     private boolean mUseTodayLayout = true;
 
     private Cursor mCursor;
+    private LocationForecast mForecast;
+    private ForecastRows mRows;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
@@ -73,9 +78,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            mClickHandler.onClick(mForecast.getDate(adapterPosition), this);
             mICM.onClick(this);
         }
     }
@@ -88,6 +91,9 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        // Days are identified by their date, so selections and animations follow them around.
+        // This has to be set before the ItemChoiceManager starts observing.
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
     }
@@ -124,10 +130,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        int weatherId = mForecast.getWeatherId(position);
         int defaultImage;
         boolean useLongToday;
+        ForecastRows rows = mRows;
 
         switch (getItemViewType(position)) {
             case VIEW_TYPE_TODAY:
@@ -151,36 +157,25 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
         // this enables better animations. even if we lose state due to a device rotation,
         // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView,
+                "iconView" + mForecast.getDate(position));
 
         // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
-
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+        forecastAdapterViewHolder.mDateView.setText(useLongToday ? rows.todayDate : rows.dates[position]);
 
         // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(rows.descriptions[position]);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(rows.descriptionsA11y[position]);
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        forecastAdapterViewHolder.mHighTempView.setText(rows.highs[position]);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(rows.highsA11y[position]);
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mLowTempView.setText(rows.lows[position]);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(rows.lowsA11y[position]);
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
     }
@@ -206,15 +201,44 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return (position == 0 && mUseTodayLayout) ? VIEW_TYPE_TODAY : VIEW_TYPE_FUTURE_DAY;
     }
 
+    @Override
+    public long getItemId(int position) {
+        if (mForecast == null || position < 0 || position >= mForecast.getCount()) {
+            return RecyclerView.NO_ID;
+        }
+        return mForecast.getDate(position);
+    }
+
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        if ( null == mForecast ) return 0;
+        return mForecast.getCount();
     }
 
     public void swapCursor(Cursor newCursor) {
+        ForecastRows oldRows = mRows;
+        DiffUtil.DiffResult diff = null;
         mCursor = newCursor;
-        notifyDataSetChanged();
+        if (newCursor == null) {
+            mRows = null;
+        } else if (newCursor instanceof ForecastLoader.FormattedCursor) {
+            ForecastLoader.FormattedCursor formattedCursor = (ForecastLoader.FormattedCursor) newCursor;
+            mRows = formattedCursor.rows;
+            // The loader diffed against what it delivered last, which isn't necessarily shown.
+            if (oldRows != null && formattedCursor.previousRows == oldRows) {
+                diff = formattedCursor.diff;
+            }
+        } else {
+            // Not from a ForecastLoader, format it here.
+            mRows = new ForecastRows(mContext, LocationForecast.from(newCursor));
+        }
+        mForecast = mRows == null ? null : mRows.forecast;
+        if (diff != null) {
+            // Only rebind the days that changed.
+            diff.dispatchUpdatesTo(this);
+        } else if (mRows != oldRows) {
+            notifyDataSetChanged();
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
@@ -222,6 +246,13 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return mCursor;
     }
 
+    /**
+     * @return the forecast being shown, or null if there is no cursor.
+     */
+    public LocationForecast getForecast() {
+        return mForecast;
+    }
+
     public void selectView(RecyclerView.ViewHolder viewHolder) {
         if ( viewHolder instanceof ForecastAdapterViewHolder ) {
             ForecastAdapterViewHolder vfh = (ForecastAdapterViewHolder)viewHolder;
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+import android.support.v7.util.DiffUtil;
+
+import com.example.android.sunshine.app.data.LocationForecast;
+
+/**
+ * A {@link CursorLoader} for the forecast list that also formats the text of every row on its
+ * background thread, and works out how the rows differ from the ones it delivered last, so that
+ * {@link ForecastAdapter#swapCursor(Cursor)} finds both ready.
+ */
+class ForecastLoader extends CursorLoader {
+
+    /**
+     * The loaded cursor, carrying the rows formatted from it.
+     */
+    static class FormattedCursor extends CursorWrapper {
+        final ForecastRows rows;
+        // The rows diff was computed against, null if there were none.
+        final ForecastRows previousRows;
+        final DiffUtil.DiffResult diff;
+
+        FormattedCursor(Cursor cursor, ForecastRows rows, ForecastRows previousRows,
+                        DiffUtil.DiffResult diff) {
+            super(cursor);
+            this.rows = rows;
+            this.previousRows = previousRows;
+            this.diff = diff;
+        }
+    }
+
+    // What the adapter was last handed.  Set on the main thread, read by loadInBackground.
+    private volatile ForecastRows mDeliveredRows;
+
+    ForecastLoader(Context context, Uri uri, String[] projection, String selection,
+                   String[] selectionArgs, String sortOrder) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            ForecastRows rows = new ForecastRows(getContext(), LocationForecast.from(cursor));
+            ForecastRows previousRows = mDeliveredRows;
+            DiffUtil.DiffResult diff = previousRows == null
+                    ? null : ForecastRows.diff(previousRows, rows);
+            return new FormattedCursor(cursor, rows, previousRows, diff);
+        } catch (RuntimeException ex) {
+            cursor.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (!isReset() && cursor instanceof FormattedCursor) {
+            mDeliveredRows = ((FormattedCursor) cursor).rows;
+        }
+        super.deliverResult(cursor);
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        mDeliveredRows = null;
+    }
+}
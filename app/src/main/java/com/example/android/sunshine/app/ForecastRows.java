@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.support.v7.util.DiffUtil;
+
+import com.example.android.sunshine.app.data.LocationForecast;
+
+/**
+ * The text of every row of the forecast list, formatted up front so that binding a row is only
+ * a matter of array lookups.  Build it off the main thread: dates, descriptions and temperatures
+ * all go through {@link Utility}, which is anything but cheap.
+ */
+final class ForecastRows {
+
+    final LocationForecast forecast;
+
+    // The first row in the "today" layout uses the long form of the date.
+    final String todayDate;
+    final String[] dates;
+    final String[] descriptions;
+    final String[] descriptionsA11y;
+    final String[] highs;
+    final String[] highsA11y;
+    final String[] lows;
+    final String[] lowsA11y;
+
+    ForecastRows(Context context, LocationForecast forecast) {
+        this.forecast = forecast;
+        int count = forecast.getCount();
+        dates = new String[count];
+        descriptions = new String[count];
+        descriptionsA11y = new String[count];
+        highs = new String[count];
+        highsA11y = new String[count];
+        lows = new String[count];
+        lowsA11y = new String[count];
+
+        for (int i = 0; i < count; i++) {
+            dates[i] = Utility.getFriendlyDayString(context, forecast.getDate(i), false);
+
+            descriptions[i] = Utility.getStringForWeatherCondition(context, forecast.getWeatherId(i));
+            descriptionsA11y[i] = context.getString(R.string.a11y_forecast, descriptions[i]);
+
+            highs[i] = Utility.formatTemperature(context, forecast.getMaxTemp(i));
+            highsA11y[i] = context.getString(R.string.a11y_high_temp, highs[i]);
+
+            lows[i] = Utility.formatTemperature(context, forecast.getMinTemp(i));
+            lowsA11y[i] = context.getString(R.string.a11y_low_temp, lows[i]);
+        }
+        todayDate = count == 0 ? null : Utility.getFriendlyDayString(context, forecast.getDate(0), true);
+    }
+
+    int getCount() {
+        return forecast.getCount();
+    }
+
+    /**
+     * Works out which rows of {@code oldRows} were dropped, added or changed in {@code newRows}.
+     * Rows are the same day if they have the same date, and need binding again if anything
+     * shown for them differs.
+     */
+    static DiffUtil.DiffResult diff(final ForecastRows oldRows, final ForecastRows newRows) {
+        return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldRows.getCount();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newRows.getCount();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return oldRows.forecast.getDate(oldItemPosition)
+                        == newRows.forecast.getDate(newItemPosition);
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                // Moving into or out of the first row changes the layout, and the date format.
+                return (oldItemPosition == 0) == (newItemPosition == 0)
+                        && oldRows.forecast.getWeatherId(oldItemPosition)
+                                == newRows.forecast.getWeatherId(newItemPosition)
+                        && oldRows.dates[oldItemPosition].equals(newRows.dates[newItemPosition])
+                        && oldRows.descriptions[oldItemPosition].equals(newRows.descriptions[newItemPosition])
+                        && oldRows.highs[oldItemPosition].equals(newRows.highs[newItemPosition])
+                        && oldRows.lows[oldItemPosition].equals(newRows.lows[newItemPosition]);
+            }
+        }, false); // Days are sorted by date, they never move.
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.util.Arrays;
+
+/**
+ * Everything Sunshine shows for an OpenWeatherMap condition id, looked up in tables indexed by
+ * the id instead of walking if/else ladders.
+ * <p>
+ * Ids fall into a handful of groups that share icon, art and images.  The group table and the
+ * per-group names and image URLs are plain Java; only the resource tables refer to R, so the
+ * former can go wherever else condition ids need mapping, the watch face included.
+ * <p>
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+public final class WeatherConditions {
+
+    public static final int GROUP_UNKNOWN = -1;
+    public static final int GROUP_STORM = 0;
+    public static final int GROUP_LIGHT_RAIN = 1;
+    public static final int GROUP_RAIN = 2;
+    public static final int GROUP_SNOW = 3;
+    public static final int GROUP_FOG = 4;
+    public static final int GROUP_TORNADO = 5;
+    public static final int GROUP_CLEAR = 6;
+    public static final int GROUP_LIGHT_CLOUDS = 7;
+    public static final int GROUP_CLOUDS = 8;
+
+    private static final int MIN_WEATHER_ID = 200;
+    private static final int MAX_WEATHER_ID = 962;
+
+    // Indexed by weather id - MIN_WEATHER_ID
+    private static final byte[] GROUPS = new byte[MAX_WEATHER_ID - MIN_WEATHER_ID + 1];
+    private static final int[] STRING_RESOURCES = new int[MAX_WEATHER_ID - MIN_WEATHER_ID + 1];
+
+    // Indexed by group
+    private static final String[] ART_NAMES = {
+            "storm", "light_rain", "rain", "snow", "fog", "storm", "clear", "light_clouds", "clouds"
+    };
+    private static final String[] IMAGE_URLS = {
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg"
+    };
+    private static final int[] ICON_RESOURCES = {
+            R.drawable.ic_storm,
+            R.drawable.ic_light_rain,
+            R.drawable.ic_rain,
+            R.drawable.ic_snow,
+            R.drawable.ic_fog,
+            R.drawable.ic_storm,
+            R.drawable.ic_clear,
+            R.drawable.ic_light_clouds,
+            R.drawable.ic_cloudy
+    };
+    private static final int[] ART_RESOURCES = {
+            R.drawable.art_storm,
+            R.drawable.art_light_rain,
+            R.drawable.art_rain,
+            R.drawable.art_snow,
+            R.drawable.art_fog,
+            R.drawable.art_storm,
+            R.drawable.art_clear,
+            R.drawable.art_light_clouds,
+            R.drawable.art_clouds
+    };
+
+    static {
+        Arrays.fill(GROUPS, (byte) GROUP_UNKNOWN);
+        setGroup(200, 232, GROUP_STORM);
+        setGroup(300, 321, GROUP_LIGHT_RAIN);
+        setGroup(500, 504, GROUP_RAIN);
+        setGroup(511, 511, GROUP_SNOW);
+        setGroup(520, 531, GROUP_RAIN);
+        setGroup(600, 622, GROUP_SNOW);
+        setGroup(701, 761, GROUP_FOG);
+        setGroup(781, 781, GROUP_TORNADO);
+        setGroup(800, 800, GROUP_CLEAR);
+        setGroup(801, 801, GROUP_LIGHT_CLOUDS);
+        setGroup(802, 804, GROUP_CLOUDS);
+
+        for (int weatherId = 200; weatherId <= 232; weatherId++) {
+            setString(weatherId, R.string.condition_2xx);
+        }
+        for (int weatherId = 300; weatherId <= 321; weatherId++) {
+            setString(weatherId, R.string.condition_3xx);
+        }
+        setString(500, R.string.condition_500);
+        setString(501, R.string.condition_501);
+        setString(502, R.string.condition_502);
+        setString(503, R.string.condition_503);
+        setString(504, R.string.condition_504);
+        setString(511, R.string.condition_511);
+        setString(520, R.string.condition_520);
+        setString(521, R.string.condition_521);
+        setString(522, R.string.condition_522);
+        setString(531, R.string.condition_531);
+        setString(600, R.string.condition_600);
+        setString(601, R.string.condition_601);
+        setString(602, R.string.condition_602);
+        setString(611, R.string.condition_611);
+        setString(612, R.string.condition_612);
+        setString(615, R.string.condition_615);
+        setString(616, R.string.condition_616);
+        setString(620, R.string.condition_620);
+        setString(621, R.string.condition_621);
+        setString(622, R.string.condition_622);
+        setString(701, R.string.condition_701);
+        setString(711, R.string.condition_711);
+        setString(721, R.string.condition_721);
+        setString(731, R.string.condition_731);
+        setString(741, R.string.condition_741);
+        setString(751, R.string.condition_751);
+        setString(761, R.string.condition_761);
+        setString(762, R.string.condition_762);
+        setString(771, R.string.condition_771);
+        setString(781, R.string.condition_781);
+        setString(800, R.string.condition_800);
+        setString(801, R.string.condition_801);
+        setString(802, R.string.condition_802);
+        setString(803, R.string.condition_803);
+        setString(804, R.string.condition_804);
+        setString(900, R.string.condition_900);
+        setString(901, R.string.condition_901);
+        setString(902, R.string.condition_902);
+        setString(903, R.string.condition_903);
+        setString(904, R.string.condition_904);
+        setString(905, R.string.condition_905);
+        setString(906, R.string.condition_906);
+        setString(951, R.string.condition_951);
+        setString(952, R.string.condition_952);
+        setString(953, R.string.condition_953);
+        setString(954, R.string.condition_954);
+        setString(955, R.string.condition_955);
+        setString(956, R.string.condition_956);
+        setString(957, R.string.condition_957);
+        setString(958, R.string.condition_958);
+        setString(959, R.string.condition_959);
+        setString(960, R.string.condition_960);
+        setString(961, R.string.condition_961);
+        setString(962, R.string.condition_962);
+    }
+
+    private WeatherConditions() {
+    }
+
+    private static void setGroup(int fromWeatherId, int toWeatherId, int group) {
+        Arrays.fill(GROUPS, fromWeatherId - MIN_WEATHER_ID, toWeatherId - MIN_WEATHER_ID + 1,
+                (byte) group);
+    }
+
+    private static void setString(int weatherId, int stringId) {
+        STRING_RESOURCES[weatherId - MIN_WEATHER_ID] = stringId;
+    }
+
+    /**
+     * @return the GROUP_* constant of {@code weatherId}, GROUP_UNKNOWN if it has none.
+     */
+    public static int getGroup(int weatherId) {
+        if (weatherId < MIN_WEATHER_ID || weatherId > MAX_WEATHER_ID) {
+            return GROUP_UNKNOWN;
+        }
+        return GROUPS[weatherId - MIN_WEATHER_ID];
+    }
+
+    /**
+     * @return the name the art packs use for {@code weatherId}, or null if it has none.
+     */
+    public static String getArtName(int weatherId) {
+        int group = getGroup(weatherId);
+        return group == GROUP_UNKNOWN ? null : ART_NAMES[group];
+    }
+
+    /**
+     * @return a URL to a photo of {@code weatherId}, or null if it has none.
+     */
+    public static String getImageUrl(int weatherId) {
+        int group = getGroup(weatherId);
+        return group == GROUP_UNKNOWN ? null : IMAGE_URLS[group];
+    }
+
+    /**
+     * @return the small icon of {@code weatherId}, or -1 if it has none.
+     */
+    public static int getIconResource(int weatherId) {
+        int group = getGroup(weatherId);
+        return group == GROUP_UNKNOWN ? -1 : ICON_RESOURCES[group];
+    }
+
+    /**
+     * @return the large art of {@code weatherId}, or -1 if it has none.
+     */
+    public static int getArtResource(int weatherId) {
+        int group = getGroup(weatherId);
+        return group == GROUP_UNKNOWN ? -1 : ART_RESOURCES[group];
+    }
+
+    /**
+     * @return the description of {@code weatherId}, or 0 if there is none.
+     */
+    public static int getStringResource(int weatherId) {
+        if (weatherId < MIN_WEATHER_ID || weatherId > MAX_WEATHER_ID) {
+            return 0;
+        }
+        return STRING_RESOURCES[weatherId - MIN_WEATHER_ID];
+    }
+}
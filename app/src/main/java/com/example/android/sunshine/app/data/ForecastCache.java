@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.LruCache;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Map;
+
+/**
+ * Decoded forecast rows kept in memory by the {@link WeatherProvider}, so that the forecast
+ * list, detail view, widgets, Muzei and Wear don't each go back to SQLite for the same few days
+ * after every sync.
+ * <p>
+ * Entries hold a {@link LocationForecast} of every day from one date onwards, and serve the
+ * {@code weather/<location>?date=} and {@code weather/<location>/<date>} queries that fall
+ * within them as {@link ForecastCursor}s over it.  The provider drops them once a write to
+ * their location has committed.
+ */
+class ForecastCache {
+
+    // Bounded in days rather than locations: a couple of weeks for each of a dozen places.
+    private static final int MAX_CACHED_DAYS = 256;
+
+    // What an entry is loaded with.
+    private static final String[] LOAD_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_CITY_NAME,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private final LruCache<String, Entry> mEntries = new LruCache<String, Entry>(MAX_CACHED_DAYS) {
+        @Override
+        protected int sizeOf(String locationSetting, Entry entry) {
+            return Math.max(entry.forecast.getCount(), 1);
+        }
+    };
+
+    // Bumped by every invalidation, so that a load racing with a write never gets cached.
+    private int mGeneration;
+
+    private static final class Entry {
+        // Every stored day of the location from this one onwards is in the forecast.
+        final long startDate;
+        final LocationForecast forecast;
+
+        Entry(long startDate, LocationForecast forecast) {
+            this.startDate = startDate;
+            this.forecast = forecast;
+        }
+    }
+
+    /**
+     * Answers a {@code weather/<location>} query for the days from {@code startDate} onwards,
+     * or for {@code startDate} alone if {@code singleDay}, loading the location if needed.
+     *
+     * @return the cursor, or null if the query has to go to SQLite: an unsupported projection or
+     * sort order, or no start date.
+     */
+    Cursor query(SQLiteDatabase db, String locationSetting, long startDate, boolean singleDay,
+                 String[] projection, String sortOrder) {
+        if (startDate <= 0 || projection == null || !isDateOrder(sortOrder)) {
+            return null;
+        }
+
+        Entry entry = mEntries.get(locationSetting);
+        if (entry == null || startDate < entry.startDate) {
+            entry = load(db, locationSetting, startDate);
+        }
+
+        LocationForecast forecast = entry.forecast;
+        int from = forecast.indexOfStartDate(startDate);
+        int to = forecast.getCount();
+        if (singleDay) {
+            to = from < to && forecast.getDate(from) == startDate ? from + 1 : from;
+        }
+        return ForecastCursor.create(forecast.subList(from, to), projection);
+    }
+
+    private Entry load(SQLiteDatabase db, String locationSetting, long startDate) {
+        int generation;
+        synchronized (this) {
+            generation = mGeneration;
+        }
+        Cursor cursor = WeatherProvider.sWeatherByLocationSettingQueryBuilder.query(db,
+                LOAD_COLUMNS,
+                WeatherProvider.sLocationSettingWithStartDateSelection,
+                new String[]{locationSetting, Long.toString(startDate)},
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        Entry entry;
+        try {
+            entry = new Entry(startDate, new LocationForecast(cursor));
+        } finally {
+            cursor.close();
+        }
+        synchronized (this) {
+            // Anything read before the last invalidation may predate the write behind it.  An
+            // empty entry has no location id to be invalidated by, the next sync would miss it.
+            if (generation == mGeneration && entry.forecast.getCount() > 0) {
+                mEntries.put(locationSetting, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Drops the entry of every location in {@code locationIds}.
+     */
+    synchronized void invalidate(Iterable<Long> locationIds) {
+        mGeneration++;
+        for (Map.Entry<String, Entry> entry : mEntries.snapshot().entrySet()) {
+            for (Long locationId : locationIds) {
+                if (entry.getValue().forecast.getLocationId() == locationId) {
+                    mEntries.remove(entry.getKey());
+                    break;
+                }
+            }
+        }
+    }
+
+    synchronized void invalidateAll() {
+        mGeneration++;
+        mEntries.evictAll();
+    }
+
+    private static boolean isDateOrder(String sortOrder) {
+        return sortOrder == null
+                || sortOrder.trim().equalsIgnoreCase(WeatherEntry.COLUMN_DATE)
+                || sortOrder.trim().equalsIgnoreCase(WeatherEntry.COLUMN_DATE + " ASC");
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.AbstractCursor;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * A read-only cursor over a {@link LocationForecast}, one row per day, with the columns of a
+ * weather/location join.  Values are read straight from the forecast's arrays, nothing is
+ * copied when the cursor is created.
+ */
+class ForecastCursor extends AbstractCursor {
+
+    private static final int COLUMN_UNKNOWN = -1;
+    private static final int COLUMN_ID = 0;
+    private static final int COLUMN_LOC_KEY = 1;
+    private static final int COLUMN_DATE = 2;
+    private static final int COLUMN_SHORT_DESC = 3;
+    private static final int COLUMN_WEATHER_ID = 4;
+    private static final int COLUMN_MIN_TEMP = 5;
+    private static final int COLUMN_MAX_TEMP = 6;
+    private static final int COLUMN_HUMIDITY = 7;
+    private static final int COLUMN_PRESSURE = 8;
+    private static final int COLUMN_WIND_SPEED = 9;
+    private static final int COLUMN_DEGREES = 10;
+    private static final int COLUMN_LOCATION_ID = 11;
+    private static final int COLUMN_LOCATION_SETTING = 12;
+    private static final int COLUMN_CITY_NAME = 13;
+    private static final int COLUMN_COORD_LAT = 14;
+    private static final int COLUMN_COORD_LONG = 15;
+
+    // Column names, in the order of the COLUMN_* constants above.
+    private static final String[] WEATHER_COLUMNS = {
+            WeatherEntry._ID,
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+    private static final String[] LOCATION_COLUMNS = {
+            LocationEntry._ID,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_CITY_NAME,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private final LocationForecast mForecast;
+    private final String[] mColumnNames;
+    private final int[] mColumns;
+
+    private ForecastCursor(LocationForecast forecast, String[] columnNames, int[] columns) {
+        mForecast = forecast;
+        mColumnNames = columnNames;
+        mColumns = columns;
+    }
+
+    /**
+     * @return a cursor over {@code forecast} with the columns of {@code projection}, or null if
+     * the projection has anything but plain weather and location columns.
+     */
+    static ForecastCursor create(LocationForecast forecast, String[] projection) {
+        if (projection == null) {
+            return null;
+        }
+        String[] columnNames = new String[projection.length];
+        int[] columns = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            String column = projection[i];
+            String table = null;
+            int dot = column.indexOf('.');
+            if (dot >= 0) {
+                table = column.substring(0, dot);
+                column = column.substring(dot + 1);
+            }
+            columns[i] = resolveColumn(table, column);
+            if (columns[i] == COLUMN_UNKNOWN) {
+                return null;
+            }
+            // Named the way SQLite names them, without the table.
+            columnNames[i] = column;
+        }
+        return new ForecastCursor(forecast, columnNames, columns);
+    }
+
+    private static int resolveColumn(String table, String column) {
+        if (table == null || table.equals(WeatherEntry.TABLE_NAME)) {
+            // An unqualified _id is ambiguous in the join, let SQLite say so.
+            if (WeatherEntry._ID.equals(column)) {
+                return table == null ? COLUMN_UNKNOWN : COLUMN_ID;
+            }
+            for (int i = COLUMN_LOC_KEY; i <= COLUMN_DEGREES; i++) {
+                if (WEATHER_COLUMNS[i].equals(column)) {
+                    return i;
+                }
+            }
+        }
+        if (table == null || table.equals(LocationEntry.TABLE_NAME)) {
+            if (LocationEntry._ID.equals(column)) {
+                return table == null ? COLUMN_UNKNOWN : COLUMN_LOCATION_ID;
+            }
+            for (int i = 1; i < LOCATION_COLUMNS.length; i++) {
+                if (LOCATION_COLUMNS[i].equals(column)) {
+                    return COLUMN_LOCATION_ID + i;
+                }
+            }
+        }
+        return COLUMN_UNKNOWN;
+    }
+
+    LocationForecast getForecast() {
+        return mForecast;
+    }
+
+    @Override
+    public int getCount() {
+        return mForecast.getCount();
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    @Override
+    public int getType(int column) {
+        switch (mColumns[column]) {
+            case COLUMN_SHORT_DESC:
+            case COLUMN_LOCATION_SETTING:
+            case COLUMN_CITY_NAME:
+                return getString(column) == null ? FIELD_TYPE_NULL : FIELD_TYPE_STRING;
+            case COLUMN_ID:
+            case COLUMN_LOC_KEY:
+            case COLUMN_DATE:
+            case COLUMN_WEATHER_ID:
+            case COLUMN_LOCATION_ID:
+                return FIELD_TYPE_INTEGER;
+            default:
+                return FIELD_TYPE_FLOAT;
+        }
+    }
+
+    @Override
+    public String getString(int column) {
+        int day = getPosition();
+        switch (mColumns[column]) {
+            case COLUMN_SHORT_DESC:
+                return mForecast.getShortDesc(day);
+            case COLUMN_LOCATION_SETTING:
+                return mForecast.getLocationSetting();
+            case COLUMN_CITY_NAME:
+                return mForecast.getCityName();
+            case COLUMN_ID:
+            case COLUMN_LOC_KEY:
+            case COLUMN_DATE:
+            case COLUMN_WEATHER_ID:
+            case COLUMN_LOCATION_ID:
+                return Long.toString(getLong(column));
+            default:
+                return Double.toString(getDouble(column));
+        }
+    }
+
+    @Override
+    public long getLong(int column) {
+        int day = getPosition();
+        switch (mColumns[column]) {
+            case COLUMN_ID:
+                return mForecast.getId(day);
+            case COLUMN_LOC_KEY:
+            case COLUMN_LOCATION_ID:
+                return mForecast.getLocationId();
+            case COLUMN_DATE:
+                return mForecast.getDate(day);
+            case COLUMN_WEATHER_ID:
+                return mForecast.getWeatherId(day);
+            case COLUMN_SHORT_DESC:
+            case COLUMN_LOCATION_SETTING:
+            case COLUMN_CITY_NAME:
+                return (long) parseDouble(getString(column));
+            default:
+                return (long) getDouble(column);
+        }
+    }
+
+    @Override
+    public double getDouble(int column) {
+        int day = getPosition();
+        switch (mColumns[column]) {
+            case COLUMN_MIN_TEMP:
+                return mForecast.getMinTemp(day);
+            case COLUMN_MAX_TEMP:
+                return mForecast.getMaxTemp(day);
+            case COLUMN_HUMIDITY:
+                return mForecast.getHumidity(day);
+            case COLUMN_PRESSURE:
+                return mForecast.getPressure(day);
+            case COLUMN_WIND_SPEED:
+                return mForecast.getWindSpeed(day);
+            case COLUMN_DEGREES:
+                return mForecast.getDegrees(day);
+            case COLUMN_COORD_LAT:
+                return mForecast.getCoordLat();
+            case COLUMN_COORD_LONG:
+                return mForecast.getCoordLong();
+            case COLUMN_SHORT_DESC:
+            case COLUMN_LOCATION_SETTING:
+            case COLUMN_CITY_NAME:
+                return parseDouble(getString(column));
+            default:
+                return getLong(column);
+        }
+    }
+
+    // Text that isn't a number reads as 0, as it does from SQLite.
+    private static double parseDouble(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return (float) getDouble(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return getType(column) == FIELD_TYPE_NULL;
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+
+/**
+ * The forecast of one location, day by day, held column-wise in primitive arrays.
+ * <p>
+ * Instances are immutable.  The {@link WeatherProvider} builds one per location each time that
+ * location's weather changes, and every cursor it answers from memory hands out a view of it, so
+ * the forecast list, detail view and widgets all read the same arrays instead of each walking
+ * its own cursor.  Get it with {@link #from(Cursor)}.
+ */
+public final class LocationForecast {
+
+    private final long mLocationId;
+    private final String mLocationSetting;
+    private final String mCityName;
+    private final double mCoordLat;
+    private final double mCoordLong;
+
+    // Days [mOffset, mOffset + mCount) of the arrays below, which may be shared with other views.
+    private final int mOffset;
+    private final int mCount;
+    private final long[] mIds;
+    private final long[] mDates;
+    private final String[] mShortDescs;
+    private final int[] mWeatherIds;
+    private final double[] mMinTemps;
+    private final double[] mMaxTemps;
+    private final double[] mHumidities;
+    private final double[] mPressures;
+    private final double[] mWindSpeeds;
+    private final double[] mDegrees;
+
+    /**
+     * Reads every row of {@code cursor}, from the first.  Columns missing from the cursor read
+     * as 0 or null.
+     */
+    LocationForecast(Cursor cursor) {
+        int count = cursor.getCount();
+        mOffset = 0;
+        mCount = count;
+        mIds = new long[count];
+        mDates = new long[count];
+        mShortDescs = new String[count];
+        mWeatherIds = new int[count];
+        mMinTemps = new double[count];
+        mMaxTemps = new double[count];
+        mHumidities = new double[count];
+        mPressures = new double[count];
+        mWindSpeeds = new double[count];
+        mDegrees = new double[count];
+
+        int idIndex = findColumn(cursor, WeatherEntry.TABLE_NAME, WeatherEntry._ID);
+        int dateIndex = findColumn(cursor, WeatherEntry.TABLE_NAME, WeatherEntry.COLUMN_DATE);
+        int shortDescIndex = findColumn(cursor, WeatherEntry.TABLE_NAME, WeatherEntry.COLUMN_SHORT_DESC);
+        int weatherIdIndex = findColumn(cursor, WeatherEntry.TABLE_NAME, WeatherEntry.COLUMN_WEATHER_ID);
+        int minTempIndex = findColumn(cursor, WeatherEntry.TABLE_NAME, WeatherEntry.COLUMN_MIN_TEMP);
+        int maxTempIndex = findColumn(cursor, WeatherEntry.TABLE_NAME, WeatherEntry.COLUMN_MAX_TEMP);
+        int humidityIndex = findColumn(cursor, WeatherEntry.TABLE_NAME, WeatherEntry.COLUMN_HUMIDITY);
+        int pressureIndex = findColumn(cursor, WeatherEntry.TABLE_NAME, WeatherEntry.COLUMN_PRESSURE);
+        int windSpeedIndex = findColumn(cursor, WeatherEntry.TABLE_NAME, WeatherEntry.COLUMN_WIND_SPEED);
+        int degreesIndex = findColumn(cursor, WeatherEntry.TABLE_NAME, WeatherEntry.COLUMN_DEGREES);
+        // location._id can't be told apart from weather._id once SQLite has named the columns.
+        int locationIdIndex = findColumn(cursor, WeatherEntry.TABLE_NAME, WeatherEntry.COLUMN_LOC_KEY);
+        int locationSettingIndex = findColumn(cursor,
+                LocationEntry.TABLE_NAME, LocationEntry.COLUMN_LOCATION_SETTING);
+        int cityNameIndex = findColumn(cursor, LocationEntry.TABLE_NAME, LocationEntry.COLUMN_CITY_NAME);
+        int coordLatIndex = findColumn(cursor, LocationEntry.TABLE_NAME, LocationEntry.COLUMN_COORD_LAT);
+        int coordLongIndex = findColumn(cursor, LocationEntry.TABLE_NAME, LocationEntry.COLUMN_COORD_LONG);
+
+        long locationId = -1;
+        String locationSetting = null;
+        String cityName = null;
+        double coordLat = 0;
+        double coordLong = 0;
+        cursor.moveToPosition(-1);
+        for (int i = 0; cursor.moveToNext(); i++) {
+            mIds[i] = idIndex < 0 ? 0 : cursor.getLong(idIndex);
+            mDates[i] = dateIndex < 0 ? 0 : cursor.getLong(dateIndex);
+            mShortDescs[i] = shortDescIndex < 0 ? null : cursor.getString(shortDescIndex);
+            mWeatherIds[i] = weatherIdIndex < 0 ? 0 : cursor.getInt(weatherIdIndex);
+            mMinTemps[i] = minTempIndex < 0 ? 0 : cursor.getDouble(minTempIndex);
+            mMaxTemps[i] = maxTempIndex < 0 ? 0 : cursor.getDouble(maxTempIndex);
+            mHumidities[i] = humidityIndex < 0 ? 0 : cursor.getDouble(humidityIndex);
+            mPressures[i] = pressureIndex < 0 ? 0 : cursor.getDouble(pressureIndex);
+            mWindSpeeds[i] = windSpeedIndex < 0 ? 0 : cursor.getDouble(windSpeedIndex);
+            mDegrees[i] = degreesIndex < 0 ? 0 : cursor.getDouble(degreesIndex);
+            if (i == 0) {
+                // The same for every row of a location
+                locationId = locationIdIndex < 0 ? -1 : cursor.getLong(locationIdIndex);
+                locationSetting = locationSettingIndex < 0 ? null : cursor.getString(locationSettingIndex);
+                cityName = cityNameIndex < 0 ? null : cursor.getString(cityNameIndex);
+                coordLat = coordLatIndex < 0 ? 0 : cursor.getDouble(coordLatIndex);
+                coordLong = coordLongIndex < 0 ? 0 : cursor.getDouble(coordLongIndex);
+            }
+        }
+        cursor.moveToPosition(-1);
+        mLocationId = locationId;
+        mLocationSetting = locationSetting;
+        mCityName = cityName;
+        mCoordLat = coordLat;
+        mCoordLong = coordLong;
+    }
+
+    private LocationForecast(LocationForecast forecast, int offset, int count) {
+        mLocationId = forecast.mLocationId;
+        mLocationSetting = forecast.mLocationSetting;
+        mCityName = forecast.mCityName;
+        mCoordLat = forecast.mCoordLat;
+        mCoordLong = forecast.mCoordLong;
+        mOffset = offset;
+        mCount = count;
+        mIds = forecast.mIds;
+        mDates = forecast.mDates;
+        mShortDescs = forecast.mShortDescs;
+        mWeatherIds = forecast.mWeatherIds;
+        mMinTemps = forecast.mMinTemps;
+        mMaxTemps = forecast.mMaxTemps;
+        mHumidities = forecast.mHumidities;
+        mPressures = forecast.mPressures;
+        mWindSpeeds = forecast.mWindSpeeds;
+        mDegrees = forecast.mDegrees;
+    }
+
+    /**
+     * @return the forecast behind {@code cursor}.  Cursors answered from the provider's memory
+     * hand out the shared instance, others are read once into a new one.
+     */
+    public static LocationForecast from(Cursor cursor) {
+        Cursor wrapped = cursor;
+        while (wrapped instanceof CursorWrapper) {
+            wrapped = ((CursorWrapper) wrapped).getWrappedCursor();
+        }
+        if (wrapped instanceof ForecastCursor) {
+            return ((ForecastCursor) wrapped).getForecast();
+        }
+        return new LocationForecast(cursor);
+    }
+
+    /**
+     * @return the days in [{@code from}, {@code to}), sharing this forecast's arrays.
+     */
+    LocationForecast subList(int from, int to) {
+        if (from < 0 || to > mCount || from > to) {
+            throw new IndexOutOfBoundsException("[" + from + ", " + to + ") of " + mCount);
+        }
+        if (from == 0 && to == mCount) {
+            return this;
+        }
+        return new LocationForecast(this, mOffset + from, to - from);
+    }
+
+    /**
+     * @return the position of the first day on or after {@code date}, or {@link #getCount()} if
+     * there is none.
+     */
+    public int indexOfStartDate(long date) {
+        int index = Arrays.binarySearch(mDates, mOffset, mOffset + mCount, date);
+        return (index < 0 ? -index - 1 : index) - mOffset;
+    }
+
+    /**
+     * @return the position of the day of {@code date}, or -1 if it isn't part of the forecast.
+     */
+    public int indexOfDate(long date) {
+        int index = Arrays.binarySearch(mDates, mOffset, mOffset + mCount, date);
+        return index < 0 ? -1 : index - mOffset;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public long getLocationId() {
+        return mLocationId;
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    public String getCityName() {
+        return mCityName;
+    }
+
+    public double getCoordLat() {
+        return mCoordLat;
+    }
+
+    public double getCoordLong() {
+        return mCoordLong;
+    }
+
+    /**
+     * @return the weather table row id of a day.
+     */
+    public long getId(int position) {
+        return mIds[index(position)];
+    }
+
+    /**
+     * @return the normalized date of a day, in milliseconds.
+     */
+    public long getDate(int position) {
+        return mDates[index(position)];
+    }
+
+    public String getShortDesc(int position) {
+        return mShortDescs[index(position)];
+    }
+
+    /**
+     * @return the OpenWeatherMap condition id of a day.
+     */
+    public int getWeatherId(int position) {
+        return mWeatherIds[index(position)];
+    }
+
+    public double getMinTemp(int position) {
+        return mMinTemps[index(position)];
+    }
+
+    public double getMaxTemp(int position) {
+        return mMaxTemps[index(position)];
+    }
+
+    public double getHumidity(int position) {
+        return mHumidities[index(position)];
+    }
+
+    public double getPressure(int position) {
+        return mPressures[index(position)];
+    }
+
+    public double getWindSpeed(int position) {
+        return mWindSpeeds[index(position)];
+    }
+
+    public double getDegrees(int position) {
+        return mDegrees[index(position)];
+    }
+
+    private int index(int position) {
+        if (position < 0 || position >= mCount) {
+            throw new IndexOutOfBoundsException("Day " + position + " of " + mCount);
+        }
+        return mOffset + position;
+    }
+
+    // Finds a column by its plain or table qualified name.
+    private static int findColumn(Cursor cursor, String table, String column) {
+        int index = cursor.getColumnIndex(column);
+        if (index < 0) {
+            index = cursor.getColumnIndex(table + "." + column);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.os.Bundle;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+
+/**
+ * A batch of weather rows held column-wise in primitive arrays.
+ * <p>
+ * This is the typed alternative to passing a {@code ContentValues[]} to
+ * {@link ContentResolver#bulkInsert}: no boxing, no per-row HashMap, and the provider binds the
+ * values straight into a compiled statement.  Send it with {@link #bulkInsert(ContentResolver)}.
+ */
+public class WeatherBatch {
+
+    // Bundle keys used to ship the batch to the provider through ContentResolver.call()
+    private static final String KEY_SIZE = "size";
+    private static final String KEY_LOCATION_IDS = WeatherEntry.COLUMN_LOC_KEY;
+    private static final String KEY_DATES = WeatherEntry.COLUMN_DATE;
+    private static final String KEY_WEATHER_IDS = WeatherEntry.COLUMN_WEATHER_ID;
+    private static final String KEY_SHORT_DESCS = WeatherEntry.COLUMN_SHORT_DESC;
+    private static final String KEY_MIN_TEMPS = WeatherEntry.COLUMN_MIN_TEMP;
+    private static final String KEY_MAX_TEMPS = WeatherEntry.COLUMN_MAX_TEMP;
+    private static final String KEY_HUMIDITIES = WeatherEntry.COLUMN_HUMIDITY;
+    private static final String KEY_PRESSURES = WeatherEntry.COLUMN_PRESSURE;
+    private static final String KEY_WIND_SPEEDS = WeatherEntry.COLUMN_WIND_SPEED;
+    private static final String KEY_DEGREES = WeatherEntry.COLUMN_DEGREES;
+
+    private int mSize;
+    long[] locationIds;
+    long[] dates;
+    int[] weatherIds;
+    String[] shortDescs;
+    double[] minTemps;
+    double[] maxTemps;
+    double[] humidities;
+    double[] pressures;
+    double[] windSpeeds;
+    double[] degrees;
+
+    public WeatherBatch(int capacity) {
+        capacity = Math.max(capacity, 1);
+        locationIds = new long[capacity];
+        dates = new long[capacity];
+        weatherIds = new int[capacity];
+        shortDescs = new String[capacity];
+        minTemps = new double[capacity];
+        maxTemps = new double[capacity];
+        humidities = new double[capacity];
+        pressures = new double[capacity];
+        windSpeeds = new double[capacity];
+        degrees = new double[capacity];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * Appends one row.  {@code date} does not need to be normalized, the provider does that.
+     */
+    public void add(long locationId, long date, int weatherId, String shortDesc,
+                    double minTemp, double maxTemp, double humidity, double pressure,
+                    double windSpeed, double windDirection) {
+        ensureCapacity(mSize + 1);
+        locationIds[mSize] = locationId;
+        dates[mSize] = date;
+        weatherIds[mSize] = weatherId;
+        shortDescs[mSize] = shortDesc;
+        minTemps[mSize] = minTemp;
+        maxTemps[mSize] = maxTemp;
+        humidities[mSize] = humidity;
+        pressures[mSize] = pressure;
+        windSpeeds[mSize] = windSpeed;
+        degrees[mSize] = windDirection;
+        mSize++;
+    }
+
+    /**
+     * Appends every row of {@code other}, replacing its location with {@code locationId}.
+     */
+    public void addAll(WeatherBatch other, long locationId) {
+        ensureCapacity(mSize + other.mSize);
+        for (int i = 0; i < other.mSize; i++) {
+            add(locationId, other.dates[i], other.weatherIds[i], other.shortDescs[i],
+                    other.minTemps[i], other.maxTemps[i], other.humidities[i],
+                    other.pressures[i], other.windSpeeds[i], other.degrees[i]);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= dates.length) {
+            return;
+        }
+        capacity = Math.max(capacity, dates.length * 2);
+        locationIds = Arrays.copyOf(locationIds, capacity);
+        dates = Arrays.copyOf(dates, capacity);
+        weatherIds = Arrays.copyOf(weatherIds, capacity);
+        shortDescs = Arrays.copyOf(shortDescs, capacity);
+        minTemps = Arrays.copyOf(minTemps, capacity);
+        maxTemps = Arrays.copyOf(maxTemps, capacity);
+        humidities = Arrays.copyOf(humidities, capacity);
+        pressures = Arrays.copyOf(pressures, capacity);
+        windSpeeds = Arrays.copyOf(windSpeeds, capacity);
+        degrees = Arrays.copyOf(degrees, capacity);
+    }
+
+    /**
+     * Inserts the batch through the {@link WeatherProvider}.  Like
+     * {@link ContentResolver#bulkInsert}, only rows that differ from what is stored are written.
+     *
+     * @return the number of rows that were inserted or changed.
+     */
+    public int bulkInsert(ContentResolver contentResolver) {
+        Bundle result = contentResolver.call(WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_BULK_INSERT_WEATHER, null, toBundle());
+        return result == null ? 0 : result.getInt(WeatherContract.EXTRA_ROWS_CHANGED);
+    }
+
+    Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        bundle.putInt(KEY_SIZE, mSize);
+        bundle.putLongArray(KEY_LOCATION_IDS, locationIds);
+        bundle.putLongArray(KEY_DATES, dates);
+        bundle.putIntArray(KEY_WEATHER_IDS, weatherIds);
+        bundle.putStringArray(KEY_SHORT_DESCS, shortDescs);
+        bundle.putDoubleArray(KEY_MIN_TEMPS, minTemps);
+        bundle.putDoubleArray(KEY_MAX_TEMPS, maxTemps);
+        bundle.putDoubleArray(KEY_HUMIDITIES, humidities);
+        bundle.putDoubleArray(KEY_PRESSURES, pressures);
+        bundle.putDoubleArray(KEY_WIND_SPEEDS, windSpeeds);
+        bundle.putDoubleArray(KEY_DEGREES, degrees);
+        return bundle;
+    }
+
+    static WeatherBatch fromBundle(Bundle bundle) {
+        WeatherBatch batch = new WeatherBatch(0);
+        batch.locationIds = bundle.getLongArray(KEY_LOCATION_IDS);
+        batch.dates = bundle.getLongArray(KEY_DATES);
+        batch.weatherIds = bundle.getIntArray(KEY_WEATHER_IDS);
+        batch.shortDescs = bundle.getStringArray(KEY_SHORT_DESCS);
+        batch.minTemps = bundle.getDoubleArray(KEY_MIN_TEMPS);
+        batch.maxTemps = bundle.getDoubleArray(KEY_MAX_TEMPS);
+        batch.humidities = bundle.getDoubleArray(KEY_HUMIDITIES);
+        batch.pressures = bundle.getDoubleArray(KEY_PRESSURES);
+        batch.windSpeeds = bundle.getDoubleArray(KEY_WIND_SPEEDS);
+        batch.degrees = bundle.getDoubleArray(KEY_DEGREES);
+        batch.mSize = bundle.getInt(KEY_SIZE);
+        if (batch.locationIds == null || batch.dates == null || batch.weatherIds == null
+                || batch.shortDescs == null || batch.minTemps == null || batch.maxTemps == null
+                || batch.humidities == null || batch.pressures == null
+                || batch.windSpeeds == null || batch.degrees == null
+                || batch.mSize > batch.dates.length) {
+            throw new IllegalArgumentException("Incomplete weather batch");
+        }
+        return batch;
+    }
+
+    /**
+     * Converts rows that carry every weather column into a batch.
+     *
+     * @return the batch, or null if any row is missing a column.
+     */
+    static WeatherBatch fromContentValues(ContentValues[] values) {
+        WeatherBatch batch = new WeatherBatch(values.length);
+        for (ContentValues value : values) {
+            Long locationId = value.getAsLong(WeatherEntry.COLUMN_LOC_KEY);
+            Long date = value.getAsLong(WeatherEntry.COLUMN_DATE);
+            Integer weatherId = value.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID);
+            String shortDesc = value.getAsString(WeatherEntry.COLUMN_SHORT_DESC);
+            Double minTemp = value.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP);
+            Double maxTemp = value.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP);
+            Double humidity = value.getAsDouble(WeatherEntry.COLUMN_HUMIDITY);
+            Double pressure = value.getAsDouble(WeatherEntry.COLUMN_PRESSURE);
+            Double windSpeed = value.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED);
+            Double windDirection = value.getAsDouble(WeatherEntry.COLUMN_DEGREES);
+            if (locationId == null || date == null || weatherId == null || shortDesc == null
+                    || minTemp == null || maxTemp == null || humidity == null
+                    || pressure == null || windSpeed == null || windDirection == null
+                    || value.size() != 10) {
+                return null;
+            }
+            batch.add(locationId, date, weatherId, shortDesc, minTemp, maxTemp,
+                    humidity, pressure, windSpeed, windDirection);
+        }
+        return batch;
+    }
+}
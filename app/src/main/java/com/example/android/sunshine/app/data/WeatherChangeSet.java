@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Collects what a write to the {@link WeatherProvider} touched, and turns it into the narrowest
+ * set of notification URIs: {@code weather/<location>/<date>} for every changed day.
+ * <p>
+ * Observers registered on {@code weather/<location>} (as every CursorLoader is, since they
+ * observe descendants) or on {@code weather} still hear about those changes, but a loader on
+ * another city or another day no longer does.
+ */
+class WeatherChangeSet {
+
+    // Past this many days for one location, a single weather/<location> notification is cheaper.
+    private static final int MAX_DATES_PER_LOCATION = 31;
+
+    // weather.location_id -> normalized dates
+    private final HashMap<Long, TreeSet<Long>> mChangedDates = new HashMap<Long, TreeSet<Long>>();
+    private final LinkedHashSet<Uri> mUris = new LinkedHashSet<Uri>();
+    private boolean mAllWeatherChanged;
+
+    boolean isEmpty() {
+        return mChangedDates.isEmpty() && mUris.isEmpty() && !mAllWeatherChanged;
+    }
+
+    /**
+     * Records a changed weather row.
+     */
+    void addWeather(long locationId, long date) {
+        TreeSet<Long> dates = mChangedDates.get(locationId);
+        if (dates == null) {
+            dates = new TreeSet<Long>();
+            mChangedDates.put(locationId, dates);
+        }
+        dates.add(date);
+    }
+
+    /**
+     * Records every weather row matching {@code selection}.  Call it before a delete, or after an
+     * update, inside the same transaction as the write.
+     */
+    void addWeatherRows(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        Cursor cursor = db.query(true, WeatherEntry.TABLE_NAME,
+                new String[]{WeatherEntry.COLUMN_LOC_KEY, WeatherEntry.COLUMN_DATE},
+                selection, selectionArgs, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                addWeather(cursor.getLong(0), cursor.getLong(1));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Records a change that can't be narrowed down to individual weather rows.
+     */
+    void addAllWeather() {
+        mAllWeatherChanged = true;
+    }
+
+    /**
+     * Records a change to be announced as is, for instance on the location table.
+     */
+    void addUri(Uri uri) {
+        mUris.add(uri);
+    }
+
+    void addAll(WeatherChangeSet other) {
+        for (Map.Entry<Long, TreeSet<Long>> entry : other.mChangedDates.entrySet()) {
+            for (Long date : entry.getValue()) {
+                addWeather(entry.getKey(), date);
+            }
+        }
+        mUris.addAll(other.mUris);
+        mAllWeatherChanged |= other.mAllWeatherChanged;
+    }
+
+    /**
+     * Drops what {@code cache} holds for the locations these changes touched.
+     */
+    void invalidate(ForecastCache cache) {
+        if (mAllWeatherChanged || !mUris.isEmpty()) {
+            // Location rows changed, or weather rows that can't be traced back to one.
+            cache.invalidateAll();
+        } else if (!mChangedDates.isEmpty()) {
+            cache.invalidate(mChangedDates.keySet());
+        }
+    }
+
+    /**
+     * @param db used to translate location ids into the location settings found in the URIs.
+     * @return the URIs to notify, each one once.
+     */
+    Set<Uri> toUris(SQLiteDatabase db) {
+        LinkedHashSet<Uri> uris = new LinkedHashSet<Uri>(mUris);
+        if (mAllWeatherChanged) {
+            uris.add(WeatherEntry.CONTENT_URI);
+            return uris;
+        }
+        if (mChangedDates.isEmpty()) {
+            return uris;
+        }
+
+        HashMap<Long, String> locationSettings = queryLocationSettings(db);
+        for (Map.Entry<Long, TreeSet<Long>> entry : mChangedDates.entrySet()) {
+            String locationSetting = locationSettings.get(entry.getKey());
+            if (locationSetting == null) {
+                // Orphaned rows have no location URI, only the whole table covers them.
+                uris.add(WeatherEntry.CONTENT_URI);
+            } else if (entry.getValue().size() > MAX_DATES_PER_LOCATION) {
+                uris.add(WeatherEntry.buildWeatherLocation(locationSetting));
+            } else {
+                for (Long date : entry.getValue()) {
+                    uris.add(WeatherEntry.buildWeatherLocationWithDate(locationSetting, date));
+                }
+            }
+        }
+        return uris;
+    }
+
+    private HashMap<Long, String> queryLocationSettings(SQLiteDatabase db) {
+        StringBuilder selection = new StringBuilder(LocationEntry._ID).append(" IN (");
+        String[] selectionArgs = new String[mChangedDates.size()];
+        int i = 0;
+        for (Long locationId : mChangedDates.keySet()) {
+            selection.append(i == 0 ? "?" : ",?");
+            selectionArgs[i++] = Long.toString(locationId);
+        }
+        selection.append(')');
+
+        HashMap<Long, String> locationSettings = new HashMap<Long, String>();
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME,
+                new String[]{LocationEntry._ID, LocationEntry.COLUMN_LOCATION_SETTING},
+                selection.toString(), selectionArgs, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                locationSettings.put(cursor.getLong(0), cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return locationSettings;
+    }
+}
@@ -43,6 +43,20 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_ARCHIVE = "archive";
+
+    // Provider method, used through ContentResolver.call(), that bulk inserts a WeatherBatch.
+    // The number of rows that changed comes back under EXTRA_ROWS_CHANGED.
+    public static final String METHOD_BULK_INSERT_WEATHER = "bulkInsertWeather";
+    public static final String EXTRA_ROWS_CHANGED = "rows_changed";
+
+    // Provider method that deletes, and optionally archives, at most EXTRA_CHUNK_SIZE weather
+    // rows dated on or before EXTRA_CUTOFF_DATE in one short transaction.  The number of rows
+    // removed comes back under EXTRA_ROWS_CHANGED.
+    public static final String METHOD_PRUNE_WEATHER = "pruneWeather";
+    public static final String EXTRA_CUTOFF_DATE = "cutoff_date";
+    public static final String EXTRA_CHUNK_SIZE = "chunk_size";
+    public static final String EXTRA_ARCHIVE = "archive";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
@@ -165,4 +179,24 @@ public class WeatherContract {
                 return 0;
         }
     }
+
+    /* Inner class that defines the table contents of the weather archive table */
+    public static final class ArchiveEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_ARCHIVE).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_ARCHIVE;
+
+        // Past days pruned from the weather table, reduced to what a history view needs.
+        public static final String TABLE_NAME = "weather_archive";
+
+        // Same meaning as the WeatherEntry columns of the same name.
+        public static final String COLUMN_LOC_KEY = WeatherEntry.COLUMN_LOC_KEY;
+        public static final String COLUMN_DATE = WeatherEntry.COLUMN_DATE;
+        public static final String COLUMN_WEATHER_ID = WeatherEntry.COLUMN_WEATHER_ID;
+        public static final String COLUMN_MIN_TEMP = WeatherEntry.COLUMN_MIN_TEMP;
+        public static final String COLUMN_MAX_TEMP = WeatherEntry.COLUMN_MAX_TEMP;
+    }
 }
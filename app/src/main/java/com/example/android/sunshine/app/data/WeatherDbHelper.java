@@ -19,6 +19,8 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.data.WeatherContract.ArchiveEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
@@ -28,12 +30,33 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 4;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Serves weather.location_id = ? (the join with location) and weather.date >= ? / = ? in one
+    // index, and returns the rows already sorted by date.  The UNIQUE (date, location_id)
+    // constraint can't do that since date comes first.  The location side of the join is
+    // already covered by the UNIQUE index on location_setting, which carries the rowid.
+    static final String INDEX_WEATHER_LOCATION_DATE = "weather_location_date_idx";
+
+    /**
+     * Opens the database with the connection policy from {@code R.bool.db_write_ahead_logging}.
+     */
     public WeatherDbHelper(Context context) {
+        this(context, context.getResources().getBoolean(R.bool.db_write_ahead_logging));
+    }
+
+    /**
+     * @param writeAheadLogging true to open the database in WAL mode.  The framework then keeps
+     *                          a pool of read connections next to the single write connection,
+     *                          so queries from the UI, widgets and Muzei carry on against the
+     *                          last committed data while a sync holds a write transaction.
+     *                          false gives the classic single-connection, rollback journal mode.
+     */
+    public WeatherDbHelper(Context context, boolean writeAheadLogging) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(writeAheadLogging);
     }
 
     @Override
@@ -81,6 +104,28 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        createIndexes(sqLiteDatabase);
+        createArchiveTable(sqLiteDatabase);
+    }
+
+    private void createArchiveTable(SQLiteDatabase sqLiteDatabase) {
+        // One compact row per location and past day, kept when the history retention policy
+        // archives instead of only deleting.
+        sqLiteDatabase.execSQL("CREATE TABLE IF NOT EXISTS " + ArchiveEntry.TABLE_NAME + " (" +
+                ArchiveEntry._ID + " INTEGER PRIMARY KEY," +
+                ArchiveEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                ArchiveEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+                ArchiveEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
+                ArchiveEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+                ArchiveEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+                " UNIQUE (" + ArchiveEntry.COLUMN_LOC_KEY + ", " +
+                ArchiveEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);");
+    }
+
+    private void createIndexes(SQLiteDatabase sqLiteDatabase) {
+        sqLiteDatabase.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_WEATHER_LOCATION_DATE +
+                " ON " + WeatherEntry.TABLE_NAME + " (" +
+                WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE + ");");
     }
 
     @Override
@@ -89,10 +134,21 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
         // to simply to discard the data and start over
         // Note that this only fires if you change the version number for your database.
         // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        // Anything older than version 2 is still discarded, later versions are migrated in
+        // place so the stored history survives the upgrade.
+        if (oldVersion < 2) {
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + ArchiveEntry.TABLE_NAME);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+        // Version 3 only adds indexes, the data can stay.
+        if (oldVersion < 3) {
+            createIndexes(sqLiteDatabase);
+        }
+        if (oldVersion < 4) {
+            createArchiveTable(sqLiteDatabase);
+        }
     }
 }
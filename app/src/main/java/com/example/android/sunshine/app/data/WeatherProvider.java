@@ -17,12 +17,21 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+
+import com.example.android.sunshine.app.sync.ForecastHttpCache;
+
+import java.util.ArrayList;
 
 public class WeatherProvider extends ContentProvider {
 
@@ -30,12 +39,19 @@ public class WeatherProvider extends ContentProvider {
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
 
+    // Serves the per-location queries without going to SQLite, see notifyChanges().
+    private final ForecastCache mForecastCache = new ForecastCache();
+
+    // Changes made by the applyBatch() running on this thread, announced once it commits.
+    private final ThreadLocal<WeatherChangeSet> mBatchChanges = new ThreadLocal<WeatherChangeSet>();
+
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
+    static final int ARCHIVE = 400;
 
-    private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
@@ -57,13 +73,13 @@ public class WeatherProvider extends ContentProvider {
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
 
     //location.location_setting = ? AND date >= ?
-    private static final String sLocationSettingWithStartDateSelection =
+    static final String sLocationSettingWithStartDateSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
     //location.location_setting = ? AND date = ?
-    private static final String sLocationSettingAndDaySelection =
+    static final String sLocationSettingAndDaySelection =
             WeatherContract.LocationEntry.TABLE_NAME +
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
@@ -72,6 +88,12 @@ public class WeatherProvider extends ContentProvider {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
 
+        Cursor cached = mForecastCache.query(mOpenHelper.getReadableDatabase(),
+                locationSetting, startDate, false, projection, sortOrder);
+        if (cached != null) {
+            return cached;
+        }
+
         String[] selectionArgs;
         String selection;
 
@@ -98,6 +120,12 @@ public class WeatherProvider extends ContentProvider {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
 
+        Cursor cached = mForecastCache.query(mOpenHelper.getReadableDatabase(),
+                locationSetting, date, true, projection, sortOrder);
+        if (cached != null) {
+            return cached;
+        }
+
         return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
                 projection,
                 sLocationSettingAndDaySelection,
@@ -130,6 +158,7 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_ARCHIVE, ARCHIVE);
         return matcher;
     }
 
@@ -164,6 +193,8 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case ARCHIVE:
+                return WeatherContract.ArchiveEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -213,6 +244,19 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "archive"
+            case ARCHIVE: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.ArchiveEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -228,6 +272,7 @@ public class WeatherProvider extends ContentProvider {
     public Uri insert(Uri uri, ContentValues values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        WeatherChangeSet changes = new WeatherChangeSet();
         Uri returnUri;
 
         switch (match) {
@@ -238,6 +283,7 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                addWeather(changes, values);
                 break;
             }
             case LOCATION: {
@@ -246,12 +292,13 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                changes.addUri(uri);
                 break;
             }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChanges(changes);
         return returnUri;
     }
 
@@ -259,24 +306,63 @@ public class WeatherProvider extends ContentProvider {
     public int delete(Uri uri, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        WeatherChangeSet changes = new WeatherChangeSet();
         int rowsDeleted;
-        // this makes delete all rows return the number of rows deleted
-        if ( null == selection ) selection = "1";
         switch (match) {
             case WEATHER:
-                rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                if (null == selection) {
+                    // this makes delete all rows return the number of rows deleted
+                    rowsDeleted = db.delete(
+                            WeatherContract.WeatherEntry.TABLE_NAME, "1", selectionArgs);
+                    changes.addAllWeather();
+                    break;
+                }
+                // Find out which days are going away before they are gone.
+                db.beginTransactionNonExclusive();
+                try {
+                    changes.addWeatherRows(db, selection, selectionArgs);
+                    rowsDeleted = db.delete(
+                            WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
                 break;
-            case LOCATION:
-                rowsDeleted = db.delete(
-                        WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+            case LOCATION: {
+                // this makes delete all rows return the number of rows deleted
+                if ( null == selection ) selection = "1";
+                ArrayList<String> locationSettings = new ArrayList<String>();
+                db.beginTransactionNonExclusive();
+                try {
+                    // The HTTP validators kept for these locations go with them.
+                    Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                            new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                            selection, selectionArgs, null, null, null);
+                    try {
+                        while (cursor.moveToNext()) {
+                            locationSettings.add(cursor.getString(0));
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                    rowsDeleted = db.delete(
+                            WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                if (!locationSettings.isEmpty()) {
+                    ForecastHttpCache.remove(getContext(), locationSettings);
+                }
+                changes.addUri(uri);
                 break;
+            }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChanges(changes);
         }
         return rowsDeleted;
     }
@@ -294,23 +380,40 @@ public class WeatherProvider extends ContentProvider {
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        WeatherChangeSet changes = new WeatherChangeSet();
         int rowsUpdated;
 
         switch (match) {
             case WEATHER:
                 normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
+                if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_LOC_KEY)
+                        || values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
+                    // Rows are moving to another location or day, both ends need to hear about it.
+                    rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    changes.addAllWeather();
+                    break;
+                }
+                db.beginTransactionNonExclusive();
+                try {
+                    changes.addWeatherRows(db, selection, selectionArgs);
+                    rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
                 break;
             case LOCATION:
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                changes.addUri(uri);
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChanges(changes);
         }
         return rowsUpdated;
     }
@@ -321,13 +424,22 @@ public class WeatherProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
-                db.beginTransaction();
+                for (ContentValues value : values) {
+                    normalizeDate(value);
+                }
+                // Complete rows take the compiled statement path.
+                WeatherBatch batch = WeatherBatch.fromContentValues(values);
+                if (batch != null) {
+                    return bulkInsertWeather(batch);
+                }
+                // Non-exclusive so that, outside of WAL mode, readers can carry on until commit.
+                db.beginTransactionNonExclusive();
+                WeatherChangeSet changes = new WeatherChangeSet();
                 int returnCount = 0;
                 try {
                     for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
+                        if (upsertWeather(db, value)) {
+                            addWeather(changes, value);
                             returnCount++;
                         }
                     }
@@ -335,13 +447,322 @@ public class WeatherProvider extends ContentProvider {
                 } finally {
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                // A sync usually brings back mostly the same forecast, don't wake every observer
+                // up when nothing actually changed.
+                if (returnCount > 0) {
+                    notifyChanges(changes);
+                }
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.METHOD_BULK_INSERT_WEATHER.equals(method)) {
+            int rowsChanged = bulkInsertWeather(WeatherBatch.fromBundle(extras));
+            Bundle result = new Bundle();
+            result.putInt(WeatherContract.EXTRA_ROWS_CHANGED, rowsChanged);
+            return result;
+        }
+        if (WeatherContract.METHOD_PRUNE_WEATHER.equals(method)) {
+            int rowsDeleted = pruneWeather(extras.getLong(WeatherContract.EXTRA_CUTOFF_DATE),
+                    extras.getInt(WeatherContract.EXTRA_CHUNK_SIZE),
+                    extras.getBoolean(WeatherContract.EXTRA_ARCHIVE));
+            Bundle result = new Bundle();
+            result.putInt(WeatherContract.EXTRA_ROWS_CHANGED, rowsDeleted);
+            return result;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    // The oldest chunkSize weather rows dated on or before ?.  The date range is served by the
+    // UNIQUE (date, location_id) index, the limit keeps each transaction short.
+    private static String pruneChunkSelection(int chunkSize) {
+        return WeatherContract.WeatherEntry._ID + " IN (SELECT " +
+                WeatherContract.WeatherEntry._ID +
+                " FROM " + WeatherContract.WeatherEntry.TABLE_NAME +
+                " WHERE " + WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?" +
+                " ORDER BY " + WeatherContract.WeatherEntry.COLUMN_DATE +
+                " LIMIT " + chunkSize + ")";
+    }
+
+    private static final String sArchiveWeatherSql =
+            "INSERT INTO " + WeatherContract.ArchiveEntry.TABLE_NAME + " (" +
+                    WeatherContract.ArchiveEntry.COLUMN_LOC_KEY + ", " +
+                    WeatherContract.ArchiveEntry.COLUMN_DATE + ", " +
+                    WeatherContract.ArchiveEntry.COLUMN_WEATHER_ID + ", " +
+                    WeatherContract.ArchiveEntry.COLUMN_MIN_TEMP + ", " +
+                    WeatherContract.ArchiveEntry.COLUMN_MAX_TEMP + ") SELECT " +
+                    WeatherContract.WeatherEntry.COLUMN_LOC_KEY + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_MAX_TEMP +
+                    " FROM " + WeatherContract.WeatherEntry.TABLE_NAME + " WHERE ";
+
+    /**
+     * Deletes one chunk of old weather rows, copying them to the archive table first if asked.
+     * Callers repeat it until it returns less than {@code chunkSize}, each call being its own
+     * transaction so that a sync never waits long for the write lock.
+     *
+     * @return the number of rows deleted.
+     */
+    private int pruneWeather(long cutoffDate, int chunkSize, boolean archive) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final String selection = pruneChunkSelection(Math.max(chunkSize, 1));
+        final String[] selectionArgs = new String[]{Long.toString(cutoffDate)};
+        WeatherChangeSet changes = new WeatherChangeSet();
+        int rowsDeleted;
+        db.beginTransactionNonExclusive();
+        try {
+            changes.addWeatherRows(db, selection, selectionArgs);
+            if (archive) {
+                db.execSQL(sArchiveWeatherSql + selection, selectionArgs);
+            }
+            rowsDeleted = db.delete(WeatherContract.WeatherEntry.TABLE_NAME,
+                    selection, selectionArgs);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (rowsDeleted > 0) {
+            notifyChanges(changes);
+        }
+        return rowsDeleted;
+    }
+
+    // Both statements bind the same parameters:
+    // ?1 short_desc, ?2 weather_id, ?3 min, ?4 max, ?5 humidity, ?6 pressure, ?7 wind,
+    // ?8 degrees, ?9 location_id, ?10 date
+
+    // Rewrites the stored row for a location and date, but only if one of its values differs.
+    private static final String sUpdateChangedWeatherSql =
+            "UPDATE " + WeatherContract.WeatherEntry.TABLE_NAME + " SET " +
+                    WeatherContract.WeatherEntry.COLUMN_SHORT_DESC + " = ?1, " +
+                    WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + " = ?2, " +
+                    WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + " = ?3, " +
+                    WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + " = ?4, " +
+                    WeatherContract.WeatherEntry.COLUMN_HUMIDITY + " = ?5, " +
+                    WeatherContract.WeatherEntry.COLUMN_PRESSURE + " = ?6, " +
+                    WeatherContract.WeatherEntry.COLUMN_WIND_SPEED + " = ?7, " +
+                    WeatherContract.WeatherEntry.COLUMN_DEGREES + " = ?8" +
+                    " WHERE " + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ?9 AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " = ?10 AND (" +
+                    WeatherContract.WeatherEntry.COLUMN_SHORT_DESC + " IS NOT ?1 OR " +
+                    WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + " IS NOT ?2 OR " +
+                    WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + " IS NOT ?3 OR " +
+                    WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + " IS NOT ?4 OR " +
+                    WeatherContract.WeatherEntry.COLUMN_HUMIDITY + " IS NOT ?5 OR " +
+                    WeatherContract.WeatherEntry.COLUMN_PRESSURE + " IS NOT ?6 OR " +
+                    WeatherContract.WeatherEntry.COLUMN_WIND_SPEED + " IS NOT ?7 OR " +
+                    WeatherContract.WeatherEntry.COLUMN_DEGREES + " IS NOT ?8)";
+
+    // Inserts the row unless one already exists for the location and date.
+    private static final String sInsertNewWeatherSql =
+            "INSERT OR IGNORE INTO " + WeatherContract.WeatherEntry.TABLE_NAME + " (" +
+                    WeatherContract.WeatherEntry.COLUMN_SHORT_DESC + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_HUMIDITY + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_PRESSURE + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_WIND_SPEED + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_DEGREES + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_LOC_KEY + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE +
+                    ") VALUES (?1, ?2, ?3, ?4, ?5, ?6, ?7, ?8, ?9, ?10)";
+
+    /**
+     * Writes a batch of weather rows with two compiled statements, binding every value by index
+     * straight from the batch's arrays.  As with {@link #upsertWeather}, rows identical to the
+     * stored ones are left alone.
+     *
+     * @return the number of rows inserted or changed.
+     */
+    private int bulkInsertWeather(WeatherBatch batch) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        WeatherChangeSet changes = new WeatherChangeSet();
+        int returnCount = 0;
+        db.beginTransactionNonExclusive();
+        SQLiteStatement update = db.compileStatement(sUpdateChangedWeatherSql);
+        SQLiteStatement insert = db.compileStatement(sInsertNewWeatherSql);
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                bindWeather(update, batch, i);
+                if (update.executeUpdateDelete() > 0) {
+                    changes.addWeather(batch.locationIds[i],
+                            WeatherContract.normalizeDate(batch.dates[i]));
+                    returnCount++;
+                    continue;
+                }
+                // Either the stored row is identical, or there is none yet.
+                bindWeather(insert, batch, i);
+                if (insert.executeInsert() != -1) {
+                    changes.addWeather(batch.locationIds[i],
+                            WeatherContract.normalizeDate(batch.dates[i]));
+                    returnCount++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            update.close();
+            insert.close();
+            db.endTransaction();
+        }
+        if (returnCount > 0) {
+            notifyChanges(changes);
+        }
+        return returnCount;
+    }
+
+    private static void bindWeather(SQLiteStatement statement, WeatherBatch batch, int i) {
+        statement.bindString(1, batch.shortDescs[i]);
+        statement.bindLong(2, batch.weatherIds[i]);
+        statement.bindDouble(3, batch.minTemps[i]);
+        statement.bindDouble(4, batch.maxTemps[i]);
+        statement.bindDouble(5, batch.humidities[i]);
+        statement.bindDouble(6, batch.pressures[i]);
+        statement.bindDouble(7, batch.windSpeeds[i]);
+        statement.bindDouble(8, batch.degrees[i]);
+        statement.bindLong(9, batch.locationIds[i]);
+        statement.bindLong(10, WeatherContract.normalizeDate(batch.dates[i]));
+    }
+
+    //weather.location_id = ? AND weather.date = ?
+    private static final String sLocationKeyAndDateSelection =
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
+
+    /**
+     * Writes a weather row only if it differs from the row already stored for the same location
+     * and date.  The comparison is made against the columns present in {@code value}.
+     *
+     * @return true if a row was inserted or updated, false if the stored row was identical.
+     */
+    private boolean upsertWeather(SQLiteDatabase db, ContentValues value) {
+        Long locationKey = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+        Long date = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+        if (locationKey == null || date == null) {
+            // Can't match it to an existing row, let the table constraints sort it out.
+            return db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value) != -1;
+        }
+
+        String[] columns = new String[value.size() + 1];
+        columns[0] = WeatherContract.WeatherEntry._ID;
+        int i = 1;
+        for (String column : value.keySet()) {
+            columns[i++] = column;
+        }
+
+        Cursor existing = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                columns,
+                sLocationKeyAndDateSelection,
+                new String[]{Long.toString(locationKey), Long.toString(date)},
+                null,
+                null,
+                null);
+        try {
+            if (!existing.moveToFirst()) {
+                return db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value) != -1;
+            }
+            if (matchesCurrentRow(existing, columns, value)) {
+                return false;
+            }
+            long _id = existing.getLong(0);
+            return db.update(WeatherContract.WeatherEntry.TABLE_NAME, value,
+                    WeatherContract.WeatherEntry._ID + " = ?",
+                    new String[]{Long.toString(_id)}) > 0;
+        } finally {
+            existing.close();
+        }
+    }
+
+    /**
+     * @return true if every column in {@code value} holds the same value in the current row of
+     * {@code cursor}.  {@code columns} is the cursor's projection, the first entry is skipped.
+     */
+    private static boolean matchesCurrentRow(Cursor cursor, String[] columns, ContentValues value) {
+        for (int i = 1; i < columns.length; i++) {
+            Object expected = value.get(columns[i]);
+            if (expected == null) {
+                if (!cursor.isNull(i)) {
+                    return false;
+                }
+            } else if (cursor.isNull(i)) {
+                return false;
+            } else if (expected instanceof Number) {
+                // Numbers are compared the way SQLite stored them, so an int put into a REAL
+                // column still matches.
+                if (((Number) expected).doubleValue() != cursor.getDouble(i)) {
+                    return false;
+                }
+            } else if (!expected.toString().equals(cursor.getString(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Applies the operations in one transaction.  Their changes are announced together once it
+     * commits, and not at all if one of them fails.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        if (mBatchChanges.get() != null) {
+            // Nested, the outer batch owns the transaction and the notifications.
+            return super.applyBatch(operations);
+        }
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        WeatherChangeSet changes = new WeatherChangeSet();
+        ContentProviderResult[] results;
+        mBatchChanges.set(changes);
+        db.beginTransactionNonExclusive();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mBatchChanges.remove();
+        }
+        notifyChanges(changes);
+        return results;
+    }
+
+    // Records the location and day of a weather row, or the whole table if the row lacks either.
+    private static void addWeather(WeatherChangeSet changes, ContentValues value) {
+        Long locationKey = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+        Long date = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+        if (locationKey == null || date == null) {
+            changes.addAllWeather();
+        } else {
+            changes.addWeather(locationKey, date);
+        }
+    }
+
+    /**
+     * Notifies observers of {@code changes}, or holds them back until the enclosing
+     * {@link #applyBatch} commits.  Call it after the write's own transaction has ended.
+     */
+    private void notifyChanges(WeatherChangeSet changes) {
+        WeatherChangeSet batchChanges = mBatchChanges.get();
+        if (batchChanges != null) {
+            batchChanges.addAll(changes);
+            return;
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+        // The write has committed, anything cached from before it is stale.
+        changes.invalidate(mForecastCache);
+        for (Uri uri : changes.toUris(mOpenHelper.getReadableDatabase())) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
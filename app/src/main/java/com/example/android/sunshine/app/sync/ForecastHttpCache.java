@@ -0,0 +1,178 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.http.HttpResponseCache;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Keeps the HTTP validators (ETag, Last-Modified and freshness lifetime) of the last forecast
+ * stored for every location, so the sync adapter can send conditional requests and skip the
+ * network entirely while a response is still fresh.
+ * <p>
+ * Validators are only remembered once the forecast they describe has been committed to the
+ * database, so a 304 always means the rows we already have are current.
+ */
+public class ForecastHttpCache {
+    private static final String LOG_TAG = ForecastHttpCache.class.getSimpleName();
+
+    private static final String PREFS_NAME = "forecast_http_cache";
+    private static final String KEY_ETAG = ".etag";
+    private static final String KEY_LAST_MODIFIED = ".last_modified";
+    private static final String KEY_FRESH_UNTIL = ".fresh_until";
+
+    private static final String HTTP_CACHE_DIR = "forecast_http";
+    private static final long HTTP_CACHE_SIZE = 1024 * 1024; // 1 MiB
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String MAX_AGE = "max-age=";
+    private static final String NO_CACHE = "no-cache";
+    private static final String NO_STORE = "no-store";
+
+    /**
+     * Validators for one location's forecast.
+     */
+    static class Validators {
+        final String etag;
+        final String lastModified;
+        final long freshUntil;
+
+        Validators(String etag, String lastModified, long freshUntil) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.freshUntil = freshUntil;
+        }
+
+        boolean isFresh(long now) {
+            return now < freshUntil;
+        }
+
+        boolean isEmpty() {
+            return etag == null && lastModified == null && freshUntil == 0;
+        }
+
+        /**
+         * @return these validators, with any missing header taken from {@code previous}
+         */
+        Validators orElse(Validators previous) {
+            if (previous == null) {
+                return this;
+            }
+            return new Validators(
+                    etag != null ? etag : previous.etag,
+                    lastModified != null ? lastModified : previous.lastModified,
+                    freshUntil);
+        }
+    }
+
+    private final SharedPreferences mPrefs;
+
+    ForecastHttpCache(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Installs the process-wide on-disk {@link HttpResponseCache} used by
+     * {@link HttpURLConnection}, unless one is already installed.
+     */
+    static void installResponseCache(Context context) {
+        if (HttpResponseCache.getInstalled() != null) {
+            return;
+        }
+        try {
+            HttpResponseCache.install(new File(context.getCacheDir(), HTTP_CACHE_DIR), HTTP_CACHE_SIZE);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "HTTP response cache installation failed", e);
+        }
+    }
+
+    /**
+     * @return the stored validators for {@code locationSetting}, never null.
+     */
+    Validators get(String locationSetting) {
+        return new Validators(
+                mPrefs.getString(locationSetting + KEY_ETAG, null),
+                mPrefs.getString(locationSetting + KEY_LAST_MODIFIED, null),
+                mPrefs.getLong(locationSetting + KEY_FRESH_UNTIL, 0));
+    }
+
+    /**
+     * Remembers the validators of a forecast that has just been committed.
+     */
+    void put(String locationSetting, Validators validators) {
+        mPrefs.edit()
+                .putString(locationSetting + KEY_ETAG, validators.etag)
+                .putString(locationSetting + KEY_LAST_MODIFIED, validators.lastModified)
+                .putLong(locationSetting + KEY_FRESH_UNTIL, validators.freshUntil)
+                .apply();
+    }
+
+    /**
+     * Forgets the validators of locations whose rows are being deleted.
+     */
+    public static void remove(Context context, List<String> locationSettings) {
+        SharedPreferences.Editor editor =
+                context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit();
+        for (String locationSetting : locationSettings) {
+            editor.remove(locationSetting + KEY_ETAG)
+                    .remove(locationSetting + KEY_LAST_MODIFIED)
+                    .remove(locationSetting + KEY_FRESH_UNTIL);
+        }
+        editor.apply();
+    }
+
+    /**
+     * Adds the conditional request headers for {@code validators} to a not yet connected request.
+     */
+    static void applyTo(HttpURLConnection urlConnection, Validators validators) {
+        if (validators.etag != null) {
+            urlConnection.setRequestProperty(HEADER_IF_NONE_MATCH, validators.etag);
+        }
+        if (validators.lastModified != null) {
+            urlConnection.setRequestProperty(HEADER_IF_MODIFIED_SINCE, validators.lastModified);
+        }
+    }
+
+    /**
+     * Reads the validators and freshness lifetime from a response.  A response the server says not
+     * to reuse without revalidating is never fresh, whatever its Expires.
+     */
+    static Validators fromResponse(HttpURLConnection urlConnection, long now) {
+        long freshUntil = urlConnection.getExpiration();
+        String cacheControl = urlConnection.getHeaderField(HEADER_CACHE_CONTROL);
+        if (cacheControl != null) {
+            for (String directive : cacheControl.split(",")) {
+                directive = directive.trim().toLowerCase(Locale.US);
+                if (directive.equals(NO_CACHE) || directive.startsWith(NO_CACHE + "=")
+                        || directive.equals(NO_STORE)) {
+                    freshUntil = 0;
+                    break;
+                }
+                // max-age takes precedence over Expires.  must-revalidate needs nothing more: a
+                // stale forecast is always revalidated.
+                if (directive.startsWith(MAX_AGE)) {
+                    try {
+                        long maxAge = Long.parseLong(directive.substring(MAX_AGE.length()).trim());
+                        freshUntil = now + maxAge * 1000;
+                    } catch (NumberFormatException e) {
+                        // ignore a max-age we can't read and fall back to Expires
+                    }
+                }
+            }
+        }
+        return new Validators(
+                urlConnection.getHeaderField(HEADER_ETAG),
+                urlConnection.getHeaderField(HEADER_LAST_MODIFIED),
+                freshUntil);
+    }
+}
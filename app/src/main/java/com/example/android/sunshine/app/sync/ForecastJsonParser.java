@@ -0,0 +1,244 @@
+package com.example.android.sunshine.app.sync;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+
+/**
+ * Pull parser for the OpenWeatherMap daily forecast response.
+ * <p>
+ * The response is read token by token straight from the connection, so neither the raw body nor
+ * a {@link org.json.JSONObject} tree is ever held in memory. Each day is handed to the
+ * {@link Callback} as soon as it has been read.
+ */
+class ForecastJsonParser {
+
+    // These are the names of the JSON objects that need to be extracted.
+
+    // Location information
+    private static final String OWM_CITY = "city";
+    private static final String OWM_CITY_NAME = "name";
+    private static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    private static final String OWM_LIST = "list";
+
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_MAX = "max";
+    private static final String OWM_MIN = "min";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_DESCRIPTION = "main";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    /**
+     * Receives the pieces of the forecast as they are read from the stream.
+     */
+    interface Callback {
+        /**
+         * Called once with the city the forecast is for. OWM does not guarantee that the city
+         * object precedes the list, so this may arrive after some or all of the days.
+         */
+        void onCity(String cityName, double lat, double lon);
+
+        /**
+         * Called for every element of the forecast list, in order.
+         *
+         * @param dayIndex offset of this day from the first day in the response
+         */
+        void onDay(int dayIndex, double pressure, int humidity, double windSpeed,
+                   double windDirection, double high, double low,
+                   String description, int weatherId);
+    }
+
+    /**
+     * Reads a complete forecast response from {@code in}.
+     *
+     * @return the OWM message code, {@link HttpURLConnection#HTTP_OK} if the response carried none
+     * @throws JSONException if the response is not a well-formed forecast
+     * @throws IOException if reading from the stream fails
+     */
+    static int parse(Reader in, Callback callback) throws JSONException, IOException {
+        JsonReader reader = new JsonReader(in);
+        try {
+            return readForecast(reader, callback);
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            throw new JSONException(e.getMessage());
+        }
+    }
+
+    private static int readForecast(JsonReader reader, Callback callback)
+            throws JSONException, IOException {
+        int messageCode = HttpURLConnection.HTTP_OK;
+        boolean hasList = false;
+        boolean hasCity = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_MESSAGE_CODE.equals(name)) {
+                // OWM sends the code as a string on success and as a number on some errors,
+                // nextInt() accepts both.
+                messageCode = reader.nextInt();
+            } else if (OWM_LIST.equals(name)) {
+                readDays(reader, callback);
+                hasList = true;
+            } else if (OWM_CITY.equals(name)) {
+                readCity(reader, callback);
+                hasCity = true;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (messageCode != HttpURLConnection.HTTP_OK) {
+            return messageCode;
+        }
+        if (!hasList) {
+            throw new JSONException("No value for " + OWM_LIST);
+        }
+        if (!hasCity) {
+            throw new JSONException("No value for " + OWM_CITY);
+        }
+        return messageCode;
+    }
+
+    private static void readCity(JsonReader reader, Callback callback)
+            throws JSONException, IOException {
+        String cityName = null;
+        double lat = Double.NaN;
+        double lon = Double.NaN;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY_NAME.equals(name)) {
+                cityName = reader.nextString();
+            } else if (OWM_COORD.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String coordName = reader.nextName();
+                    if (OWM_LATITUDE.equals(coordName)) {
+                        lat = reader.nextDouble();
+                    } else if (OWM_LONGITUDE.equals(coordName)) {
+                        lon = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (cityName == null || Double.isNaN(lat) || Double.isNaN(lon)) {
+            throw new JSONException("Incomplete " + OWM_CITY);
+        }
+        callback.onCity(cityName, lat, lon);
+    }
+
+    private static void readDays(JsonReader reader, Callback callback)
+            throws JSONException, IOException {
+        int dayIndex = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            readDay(reader, dayIndex++, callback);
+        }
+        reader.endArray();
+    }
+
+    private static void readDay(JsonReader reader, int dayIndex, Callback callback)
+            throws JSONException, IOException {
+        double pressure = Double.NaN;
+        int humidity = Integer.MIN_VALUE;
+        double windSpeed = Double.NaN;
+        double windDirection = Double.NaN;
+        double high = Double.NaN;
+        double low = Double.NaN;
+        String description = null;
+        int weatherId = Integer.MIN_VALUE;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_PRESSURE.equals(name)) {
+                pressure = reader.nextDouble();
+            } else if (OWM_HUMIDITY.equals(name)) {
+                humidity = reader.nextInt();
+            } else if (OWM_WINDSPEED.equals(name)) {
+                windSpeed = reader.nextDouble();
+            } else if (OWM_WIND_DIRECTION.equals(name)) {
+                windDirection = reader.nextDouble();
+            } else if (OWM_TEMPERATURE.equals(name)) {
+                // Temperatures are in a child object called "temp".  Try not to name variables
+                // "temp" when working with temperature.  It confuses everybody.
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String tempName = reader.nextName();
+                    if (OWM_MAX.equals(tempName)) {
+                        high = reader.nextDouble();
+                    } else if (OWM_MIN.equals(tempName)) {
+                        low = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WEATHER.equals(name)) {
+                // Description is in a child array called "weather", which is 1 element long.
+                // That element also contains a weather code.
+                reader.beginArray();
+                if (reader.hasNext() && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String weatherName = reader.nextName();
+                        if (OWM_DESCRIPTION.equals(weatherName)) {
+                            description = reader.nextString();
+                        } else if (OWM_WEATHER_ID.equals(weatherName)) {
+                            weatherId = reader.nextInt();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                while (reader.hasNext()) {
+                    reader.skipValue();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (Double.isNaN(pressure) || humidity == Integer.MIN_VALUE || Double.isNaN(windSpeed)
+                || Double.isNaN(windDirection) || Double.isNaN(high) || Double.isNaN(low)
+                || description == null || weatherId == Integer.MIN_VALUE) {
+            throw new JSONException("Incomplete forecast for day " + dayIndex);
+        }
+        callback.onDay(dayIndex, pressure, humidity, windSpeed, windDirection,
+                high, low, description, weatherId);
+    }
+}
@@ -34,23 +34,34 @@ import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherBatch;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.Vector;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
@@ -62,6 +73,22 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     private static final int SYNC_FLEXTIME = SYNC_INTERVAL/3;
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
+    // Number of days of forecast requested for every location.
+    private static final int DEFAULT_NUM_DAYS = 14;
+    // Upper bound on the number of forecasts downloaded at the same time in an all-locations sync.
+    private static final int MAX_CONCURRENT_FETCHES = 4;
+
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String ENCODING_GZIP = "gzip";
+    private static final String ENCODING_DEFLATE = "deflate";
+    private static final String CONTENT_TYPE_CHARSET = "charset=";
+    private static final Charset CHARSET_UTF_8 = Charset.forName("UTF-8");
+    private static final int STREAM_BUFFER_SIZE = 8192;
+
+    // Sync extra asking for every location in the location table to be refreshed, not just the
+    // preferred one.
+    public static final String SYNC_EXTRAS_ALL_LOCATIONS =
+            "com.example.android.sunshine.app.sync.extra.ALL_LOCATIONS";
 
 
     private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
@@ -87,26 +114,121 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
 
+    private final ForecastHttpCache mHttpCache;
+
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
+        ForecastHttpCache.installResponseCache(context);
+        mHttpCache = new ForecastHttpCache(context);
     }
 
     @Override
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
         Log.d(LOG_TAG, "Starting sync");
-        String locationQuery = Utility.getPreferredLocation(getContext());
+        // Pruning used to follow every sync, make sure it still happens even if the UI hasn't
+        // been opened since the job was lost.
+        WeatherRetentionJobService.schedule(getContext());
+        String preferredLocation = Utility.getPreferredLocation(getContext());
+        HashMap<String, Long> locationIds = queryLocationIds();
+
+        // The preferred location always comes first, its result drives the location status.
+        ArrayList<String> locationSettings = new ArrayList<String>();
+        locationSettings.add(preferredLocation);
+        if (extras != null && extras.getBoolean(SYNC_EXTRAS_ALL_LOCATIONS, false)) {
+            for (String locationSetting : locationIds.keySet()) {
+                if (!locationSetting.equals(preferredLocation)) {
+                    locationSettings.add(locationSetting);
+                }
+            }
+        }
+
+        List<Forecast> forecasts = fetchForecasts(locationSettings, locationIds);
+        commitForecasts(forecasts, locationIds, syncResult);
+
+        setLocationStatus(getContext(), forecasts.get(0).status);
+    }
+
+    /**
+     * Downloads the forecasts for all of the given locations.  When there is more than one, the
+     * downloads run concurrently on a small bounded pool; nothing is written to the database
+     * here so the fetches never contend for it.
+     *
+     * @param locationIds the locations that already have a row in the location table
+     * @return one {@link Forecast} per location, in the same order as {@code locationSettings}
+     */
+    private List<Forecast> fetchForecasts(List<String> locationSettings,
+                                          final HashMap<String, Long> locationIds) {
+        ArrayList<Forecast> forecasts = new ArrayList<Forecast>(locationSettings.size());
+        if (locationSettings.size() == 1) {
+            String locationSetting = locationSettings.get(0);
+            forecasts.add(fetchForecast(locationSetting, locationIds.containsKey(locationSetting)));
+            return forecasts;
+        }
+
+        ArrayList<Callable<Forecast>> fetches = new ArrayList<Callable<Forecast>>(locationSettings.size());
+        for (final String locationSetting : locationSettings) {
+            fetches.add(new Callable<Forecast>() {
+                @Override
+                public Forecast call() {
+                    return fetchForecast(locationSetting, locationIds.containsKey(locationSetting));
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(MAX_CONCURRENT_FETCHES, locationSettings.size()));
+        try {
+            List<Future<Forecast>> results = executor.invokeAll(fetches);
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    forecasts.add(results.get(i).get());
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, "Error fetching " + locationSettings.get(i), e);
+                    forecasts.add(new Forecast(locationSettings.get(i), LOCATION_STATUS_UNKNOWN));
+                }
+            }
+        } catch (InterruptedException e) {
+            Log.w(LOG_TAG, "Interrupted while fetching forecasts", e);
+            Thread.currentThread().interrupt();
+            // Whatever did not finish is reported as unknown.
+            for (int i = forecasts.size(); i < locationSettings.size(); i++) {
+                forecasts.add(new Forecast(locationSettings.get(i), LOCATION_STATUS_UNKNOWN));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return forecasts;
+    }
+
+    /**
+     * Downloads and parses the forecast for a single location.
+     *
+     * When we already hold a forecast for the location the request is made conditional on the
+     * validators of that forecast, and it is not made at all while that forecast is still fresh.
+     * In both of those cases the returned {@link Forecast} is marked as not modified and carries
+     * no rows.
+     *
+     * @param haveStoredForecast whether the location is already in the database
+     */
+    private Forecast fetchForecast(String locationQuery, boolean haveStoredForecast) {
+        long now = System.currentTimeMillis();
+        ForecastHttpCache.Validators validators = null;
+        if (haveStoredForecast) {
+            validators = mHttpCache.get(locationQuery);
+            if (validators.isFresh(now)) {
+                Log.d(LOG_TAG, "Forecast for " + locationQuery + " is still fresh");
+                return Forecast.notModified(locationQuery, null);
+            }
+        }
 
         // These two need to be declared outside the try/catch
         // so that they can be closed in the finally block.
         HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
-
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
+        Reader reader = null;
 
         String format = "json";
         String units = "metric";
-        int numDays = 14;
+        int numDays = DEFAULT_NUM_DAYS;
 
         try {
             // Construct the URL for the OpenWeatherMap query
@@ -133,41 +255,43 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             // Create the request to OpenWeatherMap, and open the connection
             urlConnection = (HttpURLConnection) url.openConnection();
             urlConnection.setRequestMethod("GET");
+            // Forecasts are very repetitive JSON and compress well.  Asking for the encoding
+            // ourselves means we also have to decode it, see openResponseReader().
+            urlConnection.setRequestProperty(HEADER_ACCEPT_ENCODING, ENCODING_GZIP + ", " + ENCODING_DEFLATE);
+            if (validators != null) {
+                ForecastHttpCache.applyTo(urlConnection, validators);
+            }
             urlConnection.connect();
 
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-            if (inputStream == null) {
-                // Nothing to do.
-                return;
-            }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
+            ForecastHttpCache.Validators responseValidators =
+                    ForecastHttpCache.fromResponse(urlConnection, now);
+            if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                Log.d(LOG_TAG, "Forecast for " + locationQuery + " not modified");
+                // A 304 may omit the validators, keep the ones we sent in that case.
+                return Forecast.notModified(locationQuery, responseValidators.orElse(validators));
             }
 
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
+            reader = openResponseReader(urlConnection);
+            if (reader == null) {
+                // Nothing to do.
+                return new Forecast(locationQuery, LOCATION_STATUS_UNKNOWN);
             }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
+            // Parse straight off the wire, there is no need to hold the whole body in memory.
+            // An empty stream surfaces as an EOFException and is reported as the server being down.
+            Forecast forecast = getWeatherDataFromJson(reader, locationQuery);
+            if (forecast.status == LOCATION_STATUS_OK) {
+                forecast.validators = responseValidators;
+            }
+            return forecast;
         } catch (IOException e) {
             Log.e(LOG_TAG, "Error ", e);
             // If the code didn't successfully get the weather data, there's no point in attempting
             // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+            return new Forecast(locationQuery, LOCATION_STATUS_SERVER_DOWN);
         } catch (JSONException e) {
             Log.e(LOG_TAG, e.getMessage(), e);
             e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            return new Forecast(locationQuery, LOCATION_STATUS_SERVER_INVALID);
         } finally {
             if (urlConnection != null) {
                 urlConnection.disconnect();
@@ -180,182 +304,234 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 }
             }
         }
-        return;
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
+     * Opens a character stream over the response body, undoing any gzip or deflate content
+     * encoding on the fly and decoding with the charset the server declared, UTF-8 otherwise.
      *
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * @return the reader, or null if the connection has no body
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
-
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
-
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
-
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
+    private Reader openResponseReader(HttpURLConnection urlConnection) throws IOException {
+        InputStream inputStream = urlConnection.getInputStream();
+        if (inputStream == null) {
+            return null;
+        }
 
-        final String OWM_MESSAGE_CODE = "cod";
+        String contentEncoding = urlConnection.getContentEncoding();
+        if (ENCODING_GZIP.equalsIgnoreCase(contentEncoding)) {
+            inputStream = new GZIPInputStream(inputStream, STREAM_BUFFER_SIZE);
+        } else if (ENCODING_DEFLATE.equalsIgnoreCase(contentEncoding)) {
+            inputStream = new InflaterInputStream(inputStream, new Inflater(), STREAM_BUFFER_SIZE);
+        }
 
-        try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-
-            // do we have an error?
-            if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
+        Charset charset = CHARSET_UTF_8;
+        String contentType = urlConnection.getContentType();
+        if (contentType != null) {
+            int charsetIndex = contentType.toLowerCase(Locale.US).indexOf(CONTENT_TYPE_CHARSET);
+            if (charsetIndex >= 0) {
+                String charsetName = contentType.substring(charsetIndex + CONTENT_TYPE_CHARSET.length());
+                int end = charsetName.indexOf(';');
+                if (end >= 0) {
+                    charsetName = charsetName.substring(0, end);
+                }
+                charsetName = charsetName.trim().replace("\"", "");
+                try {
+                    charset = Charset.forName(charsetName);
+                } catch (IllegalArgumentException e) {
+                    Log.w(LOG_TAG, "Unsupported charset " + charsetName + ", using UTF-8");
                 }
             }
+        }
+        return new BufferedReader(new InputStreamReader(inputStream, charset), STREAM_BUFFER_SIZE);
+    }
 
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
+    /**
+     * Read the forecast in JSON Format from {@code forecastReader} and pull out the data we need
+     * to construct the rows for the weather table.
+     *
+     * The response is pulled through {@link ForecastJsonParser} one token at a time, so each
+     * day becomes a row as soon as it has been read and no intermediate String or
+     * {@link org.json.JSONObject} tree is built.  The rows are returned without a location key,
+     * that is filled in by {@link #commitForecasts} once the location row exists.
+     */
+    private Forecast getWeatherDataFromJson(Reader forecastReader, String locationSetting)
+            throws JSONException, IOException {
 
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
+        // OWM returns daily forecasts based upon the local time of the city that is being
+        // asked for, which means that we need to know the GMT offset to translate this data
+        // properly.
 
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
+        // Since this data is also sent in-order and the first day is always the
+        // current day, we're going to take advantage of that to get a nice
+        // normalized UTC date for all of our weather.
 
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
+        Time localTime = new Time();
+        localTime.setToNow();
 
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
+        // we start at the day returned by local time. Otherwise this is a mess.
+        final int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), localTime.gmtoff);
 
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
+        // now we work exclusively in UTC
+        final Time dayTime = new Time();
 
-            Time dayTime = new Time();
-            dayTime.setToNow();
+        final Forecast forecast = new Forecast(locationSetting, LOCATION_STATUS_OK);
 
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+        int messageCode = ForecastJsonParser.parse(forecastReader, new ForecastJsonParser.Callback() {
+            @Override
+            public void onCity(String cityName, double lat, double lon) {
+                forecast.cityName = cityName;
+                forecast.lat = lat;
+                forecast.lon = lon;
+            }
 
-            // now we work exclusively in UTC
-            dayTime = new Time();
+            @Override
+            public void onDay(int dayIndex, double pressure, int humidity, double windSpeed,
+                              double windDirection, double high, double low,
+                              String description, int weatherId) {
+                // Cheating to convert this to UTC time, which is what we want anyhow
+                long dateTime = dayTime.setJulianDay(julianStartDay + dayIndex);
 
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
+                // The location id is filled in at commit time.
+                forecast.rows.add(-1, dateTime, weatherId, description, low, high,
+                        humidity, pressure, windSpeed, windDirection);
+            }
+        });
+
+        // do we have an error?
+        switch (messageCode) {
+            case HttpURLConnection.HTTP_OK:
+                break;
+            case HttpURLConnection.HTTP_NOT_FOUND:
+                forecast.status = LOCATION_STATUS_INVALID;
+                forecast.rows.clear();
+                break;
+            default:
+                forecast.status = LOCATION_STATUS_SERVER_DOWN;
+                forecast.rows.clear();
+                break;
+        }
+        return forecast;
+    }
 
-                double high;
-                double low;
+    /**
+     * Writes every successfully fetched forecast to the database.  All weather rows, for all
+     * locations, go in with a single {@link WeatherBatch} so they are committed in one transaction and
+     * observers are notified once per sync rather than once per location.
+     *
+     * Forecasts that were not modified are skipped entirely, when none of them changed nothing
+     * is written, deleted or notified.
+     *
+     * @param locationIds every location id already in the database, keyed by location setting.
+     *                    Only locations we have never seen before need an insert.
+     */
+    private void commitForecasts(List<Forecast> forecasts, HashMap<String, Long> locationIds,
+                                 SyncResult syncResult) {
+        int rowCount = 0;
+        for (Forecast forecast : forecasts) {
+            rowCount += forecast.rows.size();
+        }
+        WeatherBatch batch = new WeatherBatch(rowCount);
+        for (Forecast forecast : forecasts) {
+            if (forecast.status != LOCATION_STATUS_OK) {
+                syncResult.stats.numIoExceptions++;
+                continue;
+            }
+            if (forecast.notModified) {
+                syncResult.stats.numSkippedEntries++;
+                if (forecast.validators != null) {
+                    mHttpCache.put(forecast.locationSetting, forecast.validators);
+                }
+                continue;
+            }
+            if (forecast.rows.size() == 0) {
+                continue;
+            }
 
-                String description;
-                int weatherId;
+            Long locationId = locationIds.get(forecast.locationSetting);
+            if (locationId == null) {
+                locationId = addLocation(forecast.locationSetting, forecast.cityName,
+                        forecast.lat, forecast.lon);
+                locationIds.put(forecast.locationSetting, locationId);
+            }
+            batch.addAll(forecast.rows, locationId);
+        }
 
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
+        // add to database
+        if ( batch.size() > 0 ) {
+            int inserted = batch.bulkInsert(getContext().getContentResolver());
+            syncResult.stats.numInserts += inserted;
 
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
-
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
-
-                ContentValues weatherValues = new ContentValues();
-
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-                cVVector.add(weatherValues);
+            // Only now that the rows are stored can a 304 be trusted to mean we are up to date.
+            for (Forecast forecast : forecasts) {
+                if (forecast.status == LOCATION_STATUS_OK && !forecast.notModified
+                        && forecast.validators != null && !forecast.validators.isEmpty()) {
+                    mHttpCache.put(forecast.locationSetting, forecast.validators);
+                }
             }
 
-            int inserted = 0;
-            // add to database
-            if ( cVVector.size() > 0 ) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
+            // Old days are no longer deleted here, WeatherRetentionJobService prunes the
+            // history on its own schedule.
 
+            // bulkInsert only counts rows that actually changed
+            if (inserted > 0) {
                 updateWidgets();
                 updateMuzei();
-                notifyWeather();
                 notifyWear();
             }
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+            notifyWeather();
+        }
+        Log.d(LOG_TAG, "Sync Complete. " + forecasts.size() + " Locations, "
+                + batch.size() + " Received, " + syncResult.stats.numInserts + " Changed");
+    }
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+    /**
+     * @return the row id of every location in the location table, keyed by location setting.
+     */
+    private HashMap<String, Long> queryLocationIds() {
+        HashMap<String, Long> locationIds = new HashMap<String, Long>();
+        Cursor locationCursor = getContext().getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry._ID,
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                null,
+                null,
+                null);
+        if (locationCursor != null) {
+            while (locationCursor.moveToNext()) {
+                locationIds.put(locationCursor.getString(1), locationCursor.getLong(0));
+            }
+            locationCursor.close();
+        }
+        return locationIds;
+    }
+
+    /**
+     * The result of fetching the forecast for one location.  The weather rows do not carry a
+     * location key yet.
+     */
+    private static class Forecast {
+        final String locationSetting;
+        @LocationStatus int status;
+        // True when the stored forecast is still current and there is nothing to write.
+        boolean notModified;
+        ForecastHttpCache.Validators validators;
+        String cityName;
+        double lat;
+        double lon;
+        final WeatherBatch rows = new WeatherBatch(DEFAULT_NUM_DAYS);
+
+        Forecast(String locationSetting, @LocationStatus int status) {
+            this.locationSetting = locationSetting;
+            this.status = status;
+        }
+
+        static Forecast notModified(String locationSetting,
+                                    ForecastHttpCache.Validators validators) {
+            Forecast forecast = new Forecast(locationSetting, LOCATION_STATUS_OK);
+            forecast.notModified = true;
+            forecast.validators = validators;
+            return forecast;
         }
     }
 
@@ -545,16 +721,19 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static void configurePeriodicSync(Context context, int syncInterval, int flexTime) {
         Account account = getSyncAccount(context);
         String authority = context.getString(R.string.content_authority);
+        // Periodic syncs refresh every stored location so switching between them is instant
+        Bundle extras = new Bundle();
+        extras.putBoolean(SYNC_EXTRAS_ALL_LOCATIONS, true);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
             // we can enable inexact timers in our periodic sync
             SyncRequest request = new SyncRequest.Builder().
                     syncPeriodic(syncInterval, flexTime).
                     setSyncAdapter(account, authority).
-                    setExtras(new Bundle()).build();
+                    setExtras(extras).build();
             ContentResolver.requestSync(request);
         } else {
             ContentResolver.addPeriodicSync(account,
-                    authority, new Bundle(), syncInterval);
+                    authority, extras, syncInterval);
         }
     }
 
@@ -570,6 +749,19 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 context.getString(R.string.content_authority), bundle);
     }
 
+    /**
+     * Helper method to have the sync adapter refresh every stored location immediately
+     * @param context The context used to access the account service
+     */
+    public static void syncAllLocationsImmediately(Context context) {
+        Bundle bundle = new Bundle();
+        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
+        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+        bundle.putBoolean(SYNC_EXTRAS_ALL_LOCATIONS, true);
+        ContentResolver.requestSync(getSyncAccount(context),
+                context.getString(R.string.content_authority), bundle);
+    }
+
     /**
      * Helper method to get the fake account to be used with SyncAdapter, or make a new one
      * if the fake account doesn't exist yet.  If we make a new account, we call the
@@ -614,6 +806,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
          * Since we've created an account
          */
         SunshineSyncAdapter.configurePeriodicSync(context, SYNC_INTERVAL, SYNC_FLEXTIME);
+        setAllLocationsPeriodicSync(context);
 
         /*
          * Without calling setSyncAutomatically, our periodic sync will not be enabled.
@@ -627,7 +820,36 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     }
 
     public static void initializeSyncAdapter(Context context) {
-        getSyncAccount(context);
+        Account account = getSyncAccount(context);
+        if (account != null) {
+            upgradePeriodicSync(context, account);
+        }
+        WeatherRetentionJobService.schedule(context);
+    }
+
+    /**
+     * Replaces the periodic sync of the preferred location that installs from before
+     * SYNC_EXTRAS_ALL_LOCATIONS still have, once.  Periodic syncs are told apart by their extras,
+     * so configuring the new one alone would run both.
+     */
+    private static void upgradePeriodicSync(Context context, Account account) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        String key = context.getString(R.string.pref_all_locations_periodic_sync_key);
+        if (sp.getBoolean(key, false)) {
+            return;
+        }
+        ContentResolver.removePeriodicSync(account, context.getString(R.string.content_authority),
+                new Bundle());
+        configurePeriodicSync(context, SYNC_INTERVAL, SYNC_FLEXTIME);
+        setAllLocationsPeriodicSync(context);
+        // The other stored locations haven't been refreshed since they were last looked at
+        syncAllLocationsImmediately(context);
+    }
+
+    private static void setAllLocationsPeriodicSync(Context context) {
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putBoolean(context.getString(R.string.pref_all_locations_periodic_sync_key), true)
+                .apply();
     }
 
     /**
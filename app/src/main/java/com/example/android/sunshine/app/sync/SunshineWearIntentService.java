@@ -3,20 +3,16 @@ package com.example.android.sunshine.app.sync;
 import android.app.IntentService;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
-import android.os.Bundle;
-import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
+import android.preference.PreferenceManager;
 import android.util.Log;
 
+import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
-import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.Asset;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataMap;
@@ -24,8 +20,8 @@ import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import java.io.ByteArrayOutputStream;
-import java.util.Date;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * An {@link IntentService} subclass for handling asynchronous task requests in
@@ -34,13 +30,12 @@ import java.util.Date;
  * startActionWearCurrentWeatherUpdate - Send current weather to wearable
  * startActionWearWeatherUpdate - Send specified weather update to wearable
  */
-public class SunshineWearIntentService extends IntentService implements
-        GoogleApiClient.ConnectionCallbacks,
-        GoogleApiClient.OnConnectionFailedListener {
+public class SunshineWearIntentService extends IntentService {
     private final String TAG = SunshineWearIntentService.class.getSimpleName();
 
     private static final String WEATHER_UPDATE_CURRENT = "com.example.android.sunshine.app.sync.action.current_weather_update";
     private static final String WEATHER_UPDATE = "com.example.android.sunshine.app.sync.action.weather_update";
+    private static final String WEATHER_UPDATE_REQUESTED = "com.example.android.sunshine.app.sync.action.requested_weather_update";
 
     private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
@@ -62,8 +57,9 @@ public class SunshineWearIntentService extends IntentService implements
     private static final String DATA_MAP_WEATHER_KEY_HIGH = "high";
     private static final String DATA_MAP_WEATHER_KEY_LOW = "low";
     private static final String DATA_MAP_WEATHER_KEY_ICON = "icon";
-
-    private GoogleApiClient googleApiClient;
+    private static final String DATA_MAP_WEATHER_KEY_ICON_DIGEST = "icon_digest";
+    private static final String DATA_MAP_WEATHER_KEY_TIME = "time";
+    private static final long CONNECT_TIMEOUT_MS = 30 * 1000;
 
     public SunshineWearIntentService() {
         super("SunshineWearIntentService");
@@ -81,6 +77,19 @@ public class SunshineWearIntentService extends IntentService implements
         context.startService(intent);
     }
 
+    /**
+     * Starts this service to perform action WEATHER_UPDATE_REQUESTED, which sends the current
+     * weather even if it is what was last sent: the watch asks when it has none. If the service
+     * is already performing a task this action will be queued.
+     *
+     * @see IntentService
+     */
+    public static void startActionWearRequestedWeatherUpdate(Context context) {
+        Intent intent = new Intent(context, SunshineWearIntentService.class);
+        intent.setAction(WEATHER_UPDATE_REQUESTED);
+        context.startService(intent);
+    }
+
     /**
      * Starts this service to perform action WEATHER_UPDATE with the given parameters. If
      * the service is already performing a task this action will be queued.
@@ -101,80 +110,111 @@ public class SunshineWearIntentService extends IntentService implements
         if (intent != null) {
             final String action = intent.getAction();
             if (WEATHER_UPDATE_CURRENT.equals(action)) {
-                getCurrentWeather();
+                getCurrentWeather(false);
+            } else if (WEATHER_UPDATE_REQUESTED.equals(action)) {
+                getCurrentWeather(true);
             }
              else if (WEATHER_UPDATE.equals(action)) {
                 final double high = intent.getDoubleExtra(EXTRA_HIGH, Integer.MAX_VALUE);
                 final double low = intent.getDoubleExtra(EXTRA_LOW, Integer.MIN_VALUE);
                 final int iconId = intent.getIntExtra(EXTRA_ICON_ID, -1);
-                handleActionWearWeatherUpdate(high, low, iconId);
+                handleActionWearWeatherUpdate(high, low, iconId, false);
             }
         }
     }
 
     /**
-     * Handle action Foo in the provided background thread with the provided
-     * parameters.
+     * Sends the weather to the watch, unless it is what was last sent.
+     *
+     * @param requested whether the watch asked for it, in which case it is sent regardless: the
+     *                  watch may have lost what was last sent.
      */
-    private void handleActionWearWeatherUpdate(double high, double low, int iconId) {
+    private void handleActionWearWeatherUpdate(double high, double low, int weatherId,
+                                               boolean requested) {
+        Context context = getApplicationContext();
+        String highString = Utility.formatTemperature(context, high);
+        String lowString = Utility.formatTemperature(context, low);
+        byte[] icon = getWeatherIcon(weatherId);
+        String iconDigest = icon == null ? "" : digest(icon);
+
+        // The watch keeps the last data item it got, there is nothing to tell it if this is it.
+        String state = highString + '\n' + lowString + '\n' + iconDigest;
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String lastPublishKey = context.getString(R.string.pref_last_wear_publish);
+        if (!requested && state.equals(prefs.getString(lastPublishKey, null))) {
+            Log.d(TAG, "handleActionWearWeatherUpdate: unchanged, not sent");
+            return;
+        }
+
+        GoogleApiClient googleApiClient =
+                WearableConnection.get(context).blockingAcquire(CONNECT_TIMEOUT_MS);
         if (googleApiClient == null) {
-            googleApiClient = new GoogleApiClient.Builder(getApplicationContext())
-                    .addConnectionCallbacks(this)
-                    .addOnConnectionFailedListener(this)
-                    .addApi(Wearable.API)
-                    .build();
+            Log.d(TAG, "Failed to connect to send weather data");
+            return;
         }
-        googleApiClient.connect();
 
         PutDataMapRequest dataMapRequest = PutDataMapRequest.create(DATA_MAP_WEATHER);
         DataMap dataMap = dataMapRequest.getDataMap();
-        // Seems I need something unique to make the #*@%$^$ data sync
-        // Could use time to check for stale data
-        dataMap.putLong("time", new Date().getTime());
-        dataMap.putString(DATA_MAP_WEATHER_KEY_HIGH, Utility.formatTemperature(getApplicationContext(), high));
-        dataMap.putString(DATA_MAP_WEATHER_KEY_LOW, Utility.formatTemperature(getApplicationContext(), low));
-        dataMap.putAsset(DATA_MAP_WEATHER_KEY_ICON, getWeatherIcon(iconId));
+        dataMap.putString(DATA_MAP_WEATHER_KEY_HIGH, highString);
+        dataMap.putString(DATA_MAP_WEATHER_KEY_LOW, lowString);
+        if (icon != null) {
+            // Assets are stored and transferred by content, an icon the watch has isn't sent
+            // again.  The digest lets the watch skip loading and decoding it too.
+            dataMap.putAsset(DATA_MAP_WEATHER_KEY_ICON, Asset.createFromBytes(icon));
+            dataMap.putString(DATA_MAP_WEATHER_KEY_ICON_DIGEST, iconDigest);
+        }
+        if (requested) {
+            // The Data Layer doesn't deliver an item identical to the one it has, which the watch
+            // may no longer have.
+            dataMap.putLong(DATA_MAP_WEATHER_KEY_TIME, System.currentTimeMillis());
+        }
         PutDataRequest weatherRequest = dataMapRequest.asPutDataRequest();
         weatherRequest.setUrgent();
-        Wearable.DataApi.putDataItem(googleApiClient, weatherRequest)
-                .setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-                    @Override
-                    public void onResult(DataApi.DataItemResult dataItemResult) {
-                        if (!dataItemResult.getStatus().isSuccess()) {
-                            Log.d(TAG, "Failed to send weather data");
-                        } else {
-                            Log.d(TAG, "Successfully sent weather data");
-                        }
-                    }
-                });
+        DataApi.DataItemResult dataItemResult;
+        try {
+            dataItemResult = Wearable.DataApi.putDataItem(googleApiClient, weatherRequest).await();
+        } finally {
+            WearableConnection.get(context).release();
+        }
+        if (!dataItemResult.getStatus().isSuccess()) {
+            Log.d(TAG, "Failed to send weather data");
+            return;
+        }
+        prefs.edit().putString(lastPublishKey, state).apply();
         Log.d(TAG, "handleActionWearWeatherUpdate: high=" + high + " low=" + low);
-
     }
 
-    private Asset getWeatherIcon(int weatherId) {
+    /**
+     * @return the icon of {@code weatherId} as PNG, or null if it has none.
+     */
+    private byte[] getWeatherIcon(int weatherId) {
         int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
-        Bitmap weatherIcon = BitmapFactory.decodeResource(getApplicationContext().getResources(), iconId);
-        ByteArrayOutputStream weatherIconByteStream = new ByteArrayOutputStream();
-        weatherIcon.compress(Bitmap.CompressFormat.PNG, 100, weatherIconByteStream);
-        return Asset.createFromBytes(weatherIconByteStream.toByteArray());
-    }
-
-    @Override
-    public void onConnected(@Nullable Bundle bundle) {
-
-    }
-
-    @Override
-    public void onConnectionSuspended(int i) {
-
+        if (iconId == -1) {
+            return null;
+        }
+        // Scaled for this phone's screen, as BitmapFactory.decodeResource always did.
+        int density = getResources().getDisplayMetrics().densityDpi;
+        return WearIconCache.getIcon(getApplicationContext(), iconId, density);
     }
 
-    @Override
-    public void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
-
+    private static String digest(byte[] bytes) {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device has SHA-1
+            throw new IllegalStateException(e);
+        }
+        byte[] digest = messageDigest.digest(bytes);
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
     }
 
-    private void getCurrentWeather() {
+    private void getCurrentWeather(boolean requested) {
         Context context = getApplicationContext();
 
         String locationQuery = Utility.getPreferredLocation(context);
@@ -189,9 +229,11 @@ public class SunshineWearIntentService extends IntentService implements
             double high = cursor.getDouble(INDEX_MAX_TEMP);
             double low = cursor.getDouble(INDEX_MIN_TEMP);
 
-            handleActionWearWeatherUpdate(high, low, weatherId);
+            handleActionWearWeatherUpdate(high, low, weatherId, requested);
+        }
+        if (cursor != null) {
+            cursor.close();
         }
-        cursor.close();
     }
 
 }
@@ -28,7 +28,7 @@ public class SunshineWearableListenerService extends WearableListenerService {
                 if (item.getUri().getPath().compareTo(DATA_MAP_WEATHER_REQUEST) == 0) {
                     Log.d(TAG, "onDataChanged: syncImmediately");
                     Context context = getApplicationContext();
-                    SunshineWearIntentService.startActionWearCurrentWeatherUpdate(context);
+                    SunshineWearIntentService.startActionWearRequestedWeatherUpdate(context);
 //                    SunshineSyncAdapter.syncImmediately(this);
                 }
             }
@@ -0,0 +1,178 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Weather icons encoded as PNG, ready to be sent to the watch as an Asset.  The icons only change
+ * with the app, so each one is decoded and encoded once per app version and density, kept on
+ * disk for the next process and in memory for the next update.
+ */
+class WearIconCache {
+    private static final String LOG_TAG = WearIconCache.class.getSimpleName();
+
+    private static final String DIRECTORY = "wear_icons";
+    // The whole icon set at a couple of densities fits many times over.
+    private static final int MAX_MEMORY_BYTES = 256 * 1024;
+
+    private static final LruCache<String, byte[]> sIcons = new LruCache<String, byte[]>(MAX_MEMORY_BYTES) {
+        @Override
+        protected int sizeOf(String key, byte[] png) {
+            return png.length;
+        }
+    };
+
+    private static File sDirectory;
+
+    /**
+     * @param iconId a drawable resource
+     * @param density the density to scale the icon to, as in {@link android.util.DisplayMetrics#densityDpi}
+     * @return the icon as PNG bytes, or null if it can't be decoded.
+     */
+    static synchronized byte[] getIcon(Context context, int iconId, int density) {
+        Resources resources = context.getResources();
+        // Resource ids may be renumbered by an update, their names stay put.
+        String key = resources.getResourceEntryName(iconId) + "-" + density;
+        byte[] png = sIcons.get(key);
+        if (png != null) {
+            return png;
+        }
+
+        File file = new File(getDirectory(context), key + ".png");
+        png = read(file);
+        if (png == null) {
+            png = encode(resources, iconId, density);
+            if (png == null) {
+                return null;
+            }
+            write(file, png);
+        }
+        sIcons.put(key, png);
+        return png;
+    }
+
+    private static byte[] encode(Resources resources, int iconId, int density) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inTargetDensity = density;
+        Bitmap icon = BitmapFactory.decodeResource(resources, iconId, options);
+        if (icon == null) {
+            return null;
+        }
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        icon.compress(Bitmap.CompressFormat.PNG, 100, stream);
+        icon.recycle();
+        return stream.toByteArray();
+    }
+
+    /**
+     * @return the directory of the icons of this version of the app, once those of any other
+     * version are gone.
+     */
+    private static File getDirectory(Context context) {
+        if (sDirectory != null) {
+            return sDirectory;
+        }
+        File root = new File(context.getCacheDir(), DIRECTORY);
+        String version = "unknown";
+        try {
+            version = Integer.toString(context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), 0).versionCode);
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+        }
+        File[] versions = root.listFiles();
+        if (versions != null) {
+            for (File directory : versions) {
+                if (!directory.getName().equals(version)) {
+                    delete(directory);
+                }
+            }
+        }
+        sDirectory = new File(root, version);
+        if (!sDirectory.isDirectory() && !sDirectory.mkdirs()) {
+            Log.w(LOG_TAG, "Couldn't create " + sDirectory);
+        }
+        return sDirectory;
+    }
+
+    private static byte[] read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        byte[] png = new byte[(int) file.length()];
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            int offset = 0;
+            while (offset < png.length) {
+                int read = in.read(png, offset, png.length - offset);
+                if (read < 0) {
+                    return null;
+                }
+                offset += read;
+            }
+            return png;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't read " + file, e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Nothing left to read
+                }
+            }
+        }
+    }
+
+    private static void write(File file, byte[] png) {
+        // Written aside and renamed, so that a process killed halfway leaves no truncated icon.
+        File temp = new File(file.getPath() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            out.write(png);
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                temp.delete();
+            }
+        } catch (IOException e) {
+            // Only the disk copy is lost, the icon is kept in memory.
+            Log.w(LOG_TAG, "Couldn't write " + file, e);
+            temp.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Already failed
+                }
+            }
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
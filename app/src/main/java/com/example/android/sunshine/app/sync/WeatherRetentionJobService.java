@@ -0,0 +1,122 @@
+package com.example.android.sunshine.app.sync;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Bundle;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * Drops weather days that have fallen out of the history the user wants to keep, optionally
+ * archiving them first.  This used to be a single range delete at the end of every sync; it now
+ * runs on its own schedule, while the device is idle and charging, and works in small chunks so
+ * that a sync starting in the middle of it only ever waits for one of them.
+ */
+public class WeatherRetentionJobService extends JobService {
+    private final String LOG_TAG = WeatherRetentionJobService.class.getSimpleName();
+
+    private static final int JOB_ID = 1001;
+    private static final long JOB_PERIOD_MILLIS = 1000 * 60 * 60 * 24;
+
+    // Rows deleted per transaction.  Two weeks of forecast for a few dozen locations.
+    private static final int CHUNK_SIZE = 500;
+
+    private volatile Thread mPruneThread;
+
+    /**
+     * Schedules the daily pruning job, unless it already is.
+     */
+    public static void schedule(Context context) {
+        JobScheduler jobScheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        for (JobInfo job : jobScheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID) {
+                // Rescheduling would restart the period, and launching the app often would
+                // then keep pushing the job back.
+                return;
+            }
+        }
+        jobScheduler.schedule(new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, WeatherRetentionJobService.class))
+                .setPeriodic(JOB_PERIOD_MILLIS)
+                .setRequiresDeviceIdle(true)
+                .setRequiresCharging(true)
+                // Survives reboots, the app may not be opened for a long time after one
+                .setPersisted(true)
+                .build());
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final long cutoffDate = getCutoffDate(Utility.getHistoryDays(this));
+        final boolean archive = Utility.isHistoryArchived(this);
+        mPruneThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                boolean finished = prune(cutoffDate, archive);
+                // Stopped by the system, it reschedules the job itself.
+                if (finished) {
+                    jobFinished(params, false);
+                }
+            }
+        }, LOG_TAG);
+        mPruneThread.start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        Thread pruneThread = mPruneThread;
+        if (pruneThread != null) {
+            pruneThread.interrupt();
+        }
+        // Whatever is left is picked up on the next run.
+        return true;
+    }
+
+    /**
+     * @return the start of the oldest day to drop: the day before the first one kept.
+     */
+    private static long getCutoffDate(int historyDays) {
+        Time dayTime = new Time();
+        dayTime.setToNow();
+        int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+        dayTime = new Time();
+        return dayTime.setJulianDay(julianStartDay - historyDays - 1);
+    }
+
+    /**
+     * Deletes chunks until nothing older than {@code cutoffDate} is left.
+     *
+     * @return false if the job was stopped before it was done.
+     */
+    private boolean prune(long cutoffDate, boolean archive) {
+        Bundle extras = new Bundle();
+        extras.putLong(WeatherContract.EXTRA_CUTOFF_DATE, cutoffDate);
+        extras.putInt(WeatherContract.EXTRA_CHUNK_SIZE, CHUNK_SIZE);
+        extras.putBoolean(WeatherContract.EXTRA_ARCHIVE, archive);
+
+        int totalDeleted = 0;
+        int deleted;
+        do {
+            if (Thread.currentThread().isInterrupted()) {
+                Log.d(LOG_TAG, "Stopped after deleting " + totalDeleted + " rows");
+                return false;
+            }
+            Bundle result = getContentResolver().call(WeatherContract.WeatherEntry.CONTENT_URI,
+                    WeatherContract.METHOD_PRUNE_WEATHER, null, extras);
+            deleted = result == null ? 0 : result.getInt(WeatherContract.EXTRA_ROWS_CHANGED);
+            totalDeleted += deleted;
+        } while (deleted == CHUNK_SIZE);
+        Log.d(LOG_TAG, "Pruning Complete. " + totalDeleted + " rows deleted"
+                + (archive ? " and archived" : ""));
+        return true;
+    }
+}
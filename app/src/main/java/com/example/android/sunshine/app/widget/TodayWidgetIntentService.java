@@ -32,6 +32,7 @@ import android.widget.RemoteViews;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.LocationForecast;
 import com.example.android.sunshine.app.data.WeatherContract;
 
 /**
@@ -44,11 +45,6 @@ public class TodayWidgetIntentService extends IntentService {
             WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
             WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
     };
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_SHORT_DESC = 1;
-    private static final int INDEX_MAX_TEMP = 2;
-    private static final int INDEX_MIN_TEMP = 3;
 
     public TodayWidgetIntentService() {
         super("TodayWidgetIntentService");
@@ -70,20 +66,20 @@ public class TodayWidgetIntentService extends IntentService {
         if (data == null) {
             return;
         }
-        if (!data.moveToFirst()) {
-            data.close();
+        LocationForecast forecast = LocationForecast.from(data);
+        data.close();
+        if (forecast.getCount() == 0) {
             return;
         }
 
-        // Extract the weather data from the Cursor
-        int weatherId = data.getInt(INDEX_WEATHER_ID);
+        // Extract today's weather from the forecast
+        int weatherId = forecast.getWeatherId(0);
         int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-        String description = data.getString(INDEX_SHORT_DESC);
-        double maxTemp = data.getDouble(INDEX_MAX_TEMP);
-        double minTemp = data.getDouble(INDEX_MIN_TEMP);
+        String description = forecast.getShortDesc(0);
+        double maxTemp = forecast.getMaxTemp(0);
+        double minTemp = forecast.getMinTemp(0);
         String formattedMaxTemperature = Utility.formatTemperature(this, maxTemp);
         String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
-        data.close();
 
         // Perform this loop procedure for each Today widget
         for (int appWidgetId : appWidgetIds) {
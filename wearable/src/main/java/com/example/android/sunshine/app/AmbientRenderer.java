@@ -0,0 +1,126 @@
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+
+/**
+ * Draws the time in ambient mode by copying glyphs out of an atlas rasterised once, instead of
+ * laying out and rasterising text every minute.  In low-bit ambient the glyphs are rasterised
+ * without anti-aliasing, so only full white and black reach the screen.  With burn-in protection
+ * the time moves by a few pixels every minute.
+ */
+class AmbientRenderer {
+    private static final String GLYPHS = "0123456789:";
+    private static final int GLYPH_COLON = 10;
+
+    // How far burn-in protection moves the time from where it belongs, either way
+    private static final int BURN_IN_OFFSET_PX = 4;
+
+    private final Typeface mTypeface;
+    private final Paint mPaint = new Paint();
+    private final Rect[] mSources = new Rect[GLYPHS.length()];
+    private final float[] mAdvances = new float[GLYPHS.length()];
+    private final RectF mDestination = new RectF();
+
+    private float mTextSize;
+    private boolean mLowBit;
+    private Bitmap mAtlas;
+    private float mBaseline;
+
+    AmbientRenderer(Typeface typeface) {
+        mTypeface = typeface;
+        mPaint.setColor(Color.WHITE);
+        mPaint.setFilterBitmap(false);
+    }
+
+    void setTextSize(float textSize) {
+        if (textSize != mTextSize) {
+            mTextSize = textSize;
+            releaseAtlas();
+        }
+    }
+
+    void setLowBit(boolean lowBit) {
+        if (lowBit != mLowBit) {
+            mLowBit = lowBit;
+            releaseAtlas();
+        }
+    }
+
+    /**
+     * Draws {@code time} centered on {@code centerX}, on the {@code baseline}.
+     *
+     * @param minute the minute of the day, that burn-in protection moves the time by.
+     */
+    void draw(Canvas canvas, TimeText time, float centerX, float baseline,
+              boolean burnInProtection, int minute) {
+        if (mAtlas == null) {
+            buildAtlas();
+        }
+        float width = 0;
+        for (int i = 0; i < time.length; i++) {
+            width += mAdvances[getGlyph(time.chars[i])];
+        }
+        float x = centerX - width / 2f;
+        float top = baseline - mBaseline;
+        if (burnInProtection) {
+            // A different one of 9 positions around the center every minute
+            x += (minute % 3 - 1) * BURN_IN_OFFSET_PX;
+            top += (minute / 3 % 3 - 1) * BURN_IN_OFFSET_PX;
+        }
+        // Whole pixels, so that glyphs are copied as rasterised
+        x = Math.round(x);
+        top = Math.round(top);
+        for (int i = 0; i < time.length; i++) {
+            int glyph = getGlyph(time.chars[i]);
+            Rect source = mSources[glyph];
+            mDestination.set(x, top, x + source.width(), top + source.height());
+            canvas.drawBitmap(mAtlas, source, mDestination, mPaint);
+            x += Math.round(mAdvances[glyph]);
+        }
+    }
+
+    void releaseAtlas() {
+        if (mAtlas != null) {
+            mAtlas.recycle();
+            mAtlas = null;
+        }
+    }
+
+    private static int getGlyph(char c) {
+        return c == ':' ? GLYPH_COLON : c - '0';
+    }
+
+    private void buildAtlas() {
+        Paint glyphPaint = new Paint();
+        glyphPaint.setTypeface(mTypeface);
+        glyphPaint.setTextSize(mTextSize);
+        glyphPaint.setColor(Color.WHITE);
+        glyphPaint.setAntiAlias(!mLowBit);
+        Paint.FontMetrics metrics = glyphPaint.getFontMetrics();
+        mBaseline = (float) Math.ceil(-metrics.ascent);
+        int height = (int) Math.ceil(mBaseline + metrics.descent);
+
+        glyphPaint.getTextWidths(GLYPHS, mAdvances);
+        int width = 0;
+        for (float advance : mAdvances) {
+            width += (int) Math.ceil(advance);
+        }
+
+        // Only coverage is kept, the paint gives the colour
+        mAtlas = Bitmap.createBitmap(Math.max(width, 1), Math.max(height, 1), Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(mAtlas);
+        int x = 0;
+        for (int i = 0; i < GLYPHS.length(); i++) {
+            int cellWidth = (int) Math.ceil(mAdvances[i]);
+            canvas.drawText(GLYPHS, i, i + 1, x, mBaseline, glyphPaint);
+            mSources[i] = new Rect(x, 0, x + cellWidth, height);
+            x += cellWidth;
+        }
+    }
+}
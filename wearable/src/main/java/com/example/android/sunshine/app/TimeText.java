@@ -0,0 +1,42 @@
+package com.example.android.sunshine.app;
+
+import java.util.Calendar;
+
+/**
+ * The time as hh:mm[:ss] or HH:mm[:ss], written digit by digit into a buffer that is kept, so
+ * that a watch face can draw it every second without making garbage.
+ */
+class TimeText {
+    final char[] chars = {'0', '0', ':', '0', '0', ':', '0', '0'};
+    int length;
+
+    /**
+     * Writes the time of {@code calendar} into {@link #chars}, and its length into
+     * {@link #length}.
+     */
+    void set(Calendar calendar, boolean is24Hour, boolean showSeconds) {
+        int hour;
+        if (is24Hour) {
+            hour = calendar.get(Calendar.HOUR_OF_DAY);
+        } else {
+            // As "hh": 12, 01, ... 11
+            hour = calendar.get(Calendar.HOUR);
+            if (hour == 0) {
+                hour = 12;
+            }
+        }
+        setDigits(0, hour);
+        setDigits(3, calendar.get(Calendar.MINUTE));
+        if (showSeconds) {
+            setDigits(6, calendar.get(Calendar.SECOND));
+            length = 8;
+        } else {
+            length = 5;
+        }
+    }
+
+    private void setDigits(int index, int value) {
+        chars[index] = (char) ('0' + value / 10);
+        chars[index + 1] = (char) ('0' + value % 10);
+    }
+}
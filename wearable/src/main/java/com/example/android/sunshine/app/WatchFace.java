@@ -27,11 +27,11 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.Typeface;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
 import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
 import android.support.v4.content.ContextCompat;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
@@ -40,11 +40,12 @@ import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
-import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataItemBuffer;
 import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.DataMapItem;
 import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
@@ -73,11 +74,22 @@ public class WatchFace extends CanvasWatchFaceService {
      */
     private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
 
+    /**
+     * Update rate in milliseconds when seconds aren't displayed.
+     */
+    private static final long MINUTE_UPDATE_RATE_MS = TimeUnit.MINUTES.toMillis(1);
+
     /**
      * Handler message id for updating the time periodically in interactive mode.
      */
     private static final int MSG_UPDATE_TIME = 0;
 
+    /**
+     * Handler message id for drawing a frame if anything shown changed, posted once however many
+     * times it is asked for before it is handled.
+     */
+    private static final int MSG_FRAME = 1;
+
     private static final String DATA_MAP_WEATHER_REQUEST = "/forecast_request";
 
     @Override
@@ -100,13 +112,15 @@ public class WatchFace extends CanvasWatchFaceService {
                     case MSG_UPDATE_TIME:
                         engine.handleUpdateTimeMessage();
                         break;
+                    case MSG_FRAME:
+                        engine.handleFrameMessage();
+                        break;
                 }
             }
         }
     }
 
-    private class Engine extends CanvasWatchFaceService.Engine implements
-            GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener,
+    class Engine extends CanvasWatchFaceService.Engine implements
             WatchListenerService.WeatherUpdatedListener {
         final Handler mUpdateTimeHandler = new EngineHandler(this);
         boolean mRegisteredTimeZoneReceiver = false;
@@ -127,27 +141,36 @@ public class WatchFace extends CanvasWatchFaceService {
 
         Calendar mCalendar;
         SimpleDateFormat dateFormat;
-        SimpleDateFormat timeFormat;
-        SimpleDateFormat timeFormatAmbient;
+        final TimeText timeText = new TimeText();
+        boolean is24HourFormat;
         String temperatureFormat;
 
         String highTemperature;
         String lowTemperature;
         Bitmap weatherBitmap;
 
+        // All but the time, redrawn only when what it shows changes
+        Bitmap staticLayer;
+        Canvas staticLayerCanvas;
+        int staticLayerDay;
+        volatile boolean staticLayerInvalid = true;
+
+        // What the last frame showed of the time, in units of getUpdateRateMs()
+        long drawnTimeUnit = -1;
+        volatile boolean frameContentChanged = true;
+        int framesDrawn;
+        int framesSkipped;
+
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
                 mCalendar.setTimeZone(TimeZone.getDefault());
-                invalidate();
+                requestFrame(true);
             }
         };
 
-        GoogleApiClient googleApiClient = new GoogleApiClient.Builder(WatchFace.this)
-                .addConnectionCallbacks(this)
-                .addOnConnectionFailedListener(this)
-                .addApi(Wearable.API)
-                .build();
+        // Held from the shared connection while visible, null otherwise.
+        GoogleApiClient googleApiClient;
 
         /**
          * Whether the display supports fewer bits for each color in ambient mode. When true, we
@@ -155,11 +178,27 @@ public class WatchFace extends CanvasWatchFaceService {
          */
         boolean mLowBitAmbient;
 
+        /**
+         * Whether the display needs its pixels kept moving in ambient mode.
+         */
+        boolean mBurnInProtection;
+
+        final AmbientRenderer ambientRenderer = new AmbientRenderer(NORMAL_TYPEFACE);
+
         @Override
         public void onCreate(SurfaceHolder holder) {
             super.onCreate(holder);
 
             WatchListenerService.setWeatherUpdatedListener(this);
+            // Whatever the phone last sent, until it sends something new
+            WeatherStore.Weather weather = WeatherStore.load(WatchFace.this);
+            if (weather != null) {
+                highTemperature = weather.high;
+                lowTemperature = weather.low;
+                if (weather.iconDigest != null) {
+                    weatherBitmap = WeatherIconCache.get(WatchFace.this, weather.iconDigest);
+                }
+            }
 
             setWatchFaceStyle(new WatchFaceStyle.Builder(WatchFace.this)
                     .setCardPeekMode(WatchFaceStyle.PEEK_MODE_VARIABLE)
@@ -194,14 +233,7 @@ public class WatchFace extends CanvasWatchFaceService {
 
             mCalendar = Calendar.getInstance();
             dateFormat = new SimpleDateFormat(getString(R.string.date_format), Locale.getDefault());
-            timeFormat = new SimpleDateFormat(
-                    DateFormat.is24HourFormat(getApplicationContext()) ?
-                            getString(R.string.time_format_24) : getString(R.string.time_format),
-                    Locale.getDefault());
-            timeFormatAmbient = new SimpleDateFormat(
-                    DateFormat.is24HourFormat(getApplicationContext()) ?
-                            getString(R.string.time_format_24_ambient) : getString(R.string.time_format_ambient),
-                    Locale.getDefault());
+            is24HourFormat = DateFormat.is24HourFormat(getApplicationContext());
 
             temperatureFormat = getString(R.string.temperature_format);
         }
@@ -209,7 +241,13 @@ public class WatchFace extends CanvasWatchFaceService {
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mUpdateTimeHandler.removeMessages(MSG_FRAME);
             removeDataApiListener();
+            if (staticLayer != null) {
+                staticLayer.recycle();
+                staticLayer = null;
+            }
+            ambientRenderer.releaseAtlas();
             super.onDestroy();
         }
 
@@ -234,12 +272,24 @@ public class WatchFace extends CanvasWatchFaceService {
 
             if (visible) {
                 registerReceiver();
-                googleApiClient.connect();
-                getWeatherData();
+                // The setting may have changed while we weren't visible.
+                is24HourFormat = DateFormat.is24HourFormat(getApplicationContext());
+                // Changes are sent by the phone as they happen, it is only asked when they may
+                // have been missed.
+                WeatherStore.Weather weather = WeatherStore.load(WatchFace.this);
+                if (googleApiClient == null && WeatherStore.isStale(weather)) {
+                    // Calls made while it connects wait for it
+                    googleApiClient = WearableConnection.get(WatchFace.this).acquire();
+                    if (weather == null) {
+                        loadWeatherData();
+                    } else {
+                        getWeatherData();
+                    }
+                }
 
                 // Update time zone in case it changed while we weren't visible.
                 mCalendar.setTimeZone(TimeZone.getDefault());
-                invalidate();
+                requestFrame(true);
             } else {
                 unregisterReceiver();
                 removeDataApiListener();
@@ -287,21 +337,26 @@ public class WatchFace extends CanvasWatchFaceService {
                     ? R.dimen.digital_temp_text_size_round_3 : R.dimen.digital_temp_text_size_3);
 
             timePaint.setTextSize(timeTextSize);
+            ambientRenderer.setTextSize(timeTextSize);
             datePaint.setTextSize(dateTextSize);
             temperaturePaint2.setTextSize(tempTextSize2);
             temperaturePaint3.setTextSize(tempTextSize3);
+            staticLayerInvalid = true;
         }
 
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            mBurnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
+            ambientRenderer.setLowBit(mLowBitAmbient);
         }
 
         @Override
         public void onTimeTick() {
             super.onTimeTick();
-            invalidate();
+            // Also called on other occasions than the minute changing
+            requestFrame(false);
         }
 
         @Override
@@ -309,11 +364,7 @@ public class WatchFace extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             if (mAmbient != inAmbientMode) {
                 mAmbient = inAmbientMode;
-                if (mLowBitAmbient) {
-                    timePaint.setAntiAlias(!inAmbientMode);
-                    datePaint.setAntiAlias(!inAmbientMode);
-                }
-                invalidate();
+                requestFrame(true);
             }
 
             // Whether the timer should be running depends on whether we're visible (as well as
@@ -348,78 +399,113 @@ public class WatchFace extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            // Draw the background.
-            if (isInAmbientMode()) {
-                canvas.drawColor(Color.BLACK);
-            } else {
-                canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
-            }
-
-            // Draw H:MM in ambient mode or H:MM:SS in interactive mode.
             long now = System.currentTimeMillis();
             mCalendar.setTimeInMillis(now);
+            drawnTimeUnit = now / getUpdateRateMs();
+            frameContentChanged = false;
+            framesDrawn++;
 
-            Date date = mCalendar.getTime();
-            String timeString = mAmbient
-                    ? timeFormatAmbient.format(date)
-                    : timeFormat.format(date);
-
+            // Don't show date or weather in ambient mode
+            if (isInAmbientMode()) {
+                canvas.drawColor(Color.BLACK);
+                // Draw H:MM
+                timeText.set(mCalendar, is24HourFormat, false);
+                int minute = mCalendar.get(Calendar.HOUR_OF_DAY) * 60 + mCalendar.get(Calendar.MINUTE);
+                // TODO: center the time in ambient mode?
+                ambientRenderer.draw(canvas, timeText, bounds.centerX(), timeOffsetY,
+                        mBurnInProtection, minute);
+                return;
+            }
 
-            final float timeOffsetX = bounds.centerX() - (timePaint.measureText(timeString) / 2f);
+            int day = mCalendar.get(Calendar.YEAR) * 1000 + mCalendar.get(Calendar.DAY_OF_YEAR);
+            if (staticLayerInvalid || day != staticLayerDay || staticLayer == null
+                    || staticLayer.getWidth() != bounds.width()
+                    || staticLayer.getHeight() != bounds.height()) {
+                staticLayerInvalid = false;
+                staticLayerDay = day;
+                drawStaticLayer(bounds);
+            }
+            canvas.drawBitmap(staticLayer, 0, 0, null);
 
-            // TODO: center the time in ambient mode?
-            canvas.drawText(timeString, timeOffsetX, timeOffsetY, timePaint);
+            // Draw H:MM:SS
+            timeText.set(mCalendar, is24HourFormat, true);
+            final float timeOffsetX = bounds.centerX()
+                    - (timePaint.measureText(timeText.chars, 0, timeText.length) / 2f);
+            canvas.drawText(timeText.chars, 0, timeText.length, timeOffsetX, timeOffsetY, timePaint);
+        }
 
-            // Don't show date or weather in ambient mode
-            if (!isInAmbientMode()) {
-                String dateString = dateFormat.format(date);
-                final float dateOffsetX = bounds.centerX() - (datePaint.measureText(dateString) / 2f);
-                canvas.drawText(dateString, dateOffsetX, dateOffsetY, datePaint);
-
-                // Divider length 1/5 of device width
-                final int dividerLength = bounds.width() / 5;
-                final float dividerOffsetStartX = bounds.centerX() - (dividerLength / 2f);
-                final float dividerOffsetEndX = bounds.centerX() + (dividerLength / 2f);
-                canvas.drawLine(dividerOffsetStartX, dividerOffsetY, dividerOffsetEndX,
-                        dividerOffsetY, dividerPaint);
-
-//                highTemperature = "188°";
-//                lowTemperature = "188°";
-                // Check if weather info has been initialized
-                if (highTemperature != null && !highTemperature.isEmpty()) {
-                    Paint temperaturePaint = temperaturePaint2;
-                    if (highTemperature.length() > 3 || lowTemperature.length() > 3) {
-                        temperaturePaint = temperaturePaint3;
-                    }
-                    // centered
-                    final float highOffsetX = bounds.centerX() - (temperaturePaint.measureText(highTemperature) / 2f);
-                    // 4/5
-                    final float lowOffsetX = ((bounds.width() / 5) * 4) - (temperaturePaint.measureText(lowTemperature) / 2f);
-
-                    canvas.drawText(highTemperature, highOffsetX, weatherOffsetY, temperaturePaint);
-                    canvas.drawText(lowTemperature, lowOffsetX, weatherOffsetY, temperaturePaint);
-
-                    if (weatherBitmap != null) {
-                        // 1/5
-                        final float iconOffsetX = ((bounds.width() / 5)) - (weatherBitmap.getWidth() / 2f);
-                        // Icon is painted from the top. Text is painted from the bottom.
-                        // We need to position the center of the icon with the center of the text.
-                        Rect textBounds = new Rect();
-                        temperaturePaint.getTextBounds(highTemperature, 0, 1, textBounds);
-                        final float textCenter = textBounds.height() / 2;
-                        final float iconCenter = weatherBitmap.getHeight() / 2;
-                        final float textOffsetYCenter = weatherOffsetY - textCenter;
-                        // Guide lines for figuring out layout
-//                        canvas.drawLine(dividerOffsetStartX, textOffsetYCenter, dividerOffsetEndX,
-//                                textOffsetYCenter, dividerPaint);
-//                        canvas.drawLine(dividerOffsetStartX, weatherOffsetY, dividerOffsetEndX,
-//                                weatherOffsetY, dividerPaint);
-                        final float iconOffsetY = textOffsetYCenter - iconCenter;
-                        canvas.drawBitmap(weatherBitmap, iconOffsetX, iconOffsetY, temperaturePaint);
-                    }
+        /**
+         * Draws all but the time into {@link #staticLayer}: the background, date, divider and
+         * weather only change with the day, the weather or the insets, not with every frame.
+         */
+        private void drawStaticLayer(Rect bounds) {
+            if (staticLayer == null || staticLayer.getWidth() != bounds.width()
+                    || staticLayer.getHeight() != bounds.height()) {
+                if (staticLayer != null) {
+                    staticLayer.recycle();
                 }
+                staticLayer = Bitmap.createBitmap(bounds.width(), bounds.height(),
+                        Bitmap.Config.ARGB_8888);
+                staticLayerCanvas = new Canvas(staticLayer);
             }
+            Canvas canvas = staticLayerCanvas;
 
+            // Draw the background.
+            canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
+
+            // Once a day, in the time zone of the time
+            dateFormat.setTimeZone(mCalendar.getTimeZone());
+            String dateString = dateFormat.format(mCalendar.getTime());
+            final float dateOffsetX = bounds.centerX() - (datePaint.measureText(dateString) / 2f);
+            canvas.drawText(dateString, dateOffsetX, dateOffsetY, datePaint);
+
+            // Divider length 1/5 of device width
+            final int dividerLength = bounds.width() / 5;
+            final float dividerOffsetStartX = bounds.centerX() - (dividerLength / 2f);
+            final float dividerOffsetEndX = bounds.centerX() + (dividerLength / 2f);
+            canvas.drawLine(dividerOffsetStartX, dividerOffsetY, dividerOffsetEndX,
+                    dividerOffsetY, dividerPaint);
+
+            // Written from another thread, read once
+            String highTemperature = this.highTemperature;
+            String lowTemperature = this.lowTemperature;
+            Bitmap weatherBitmap = this.weatherBitmap;
+
+//            highTemperature = "188°";
+//            lowTemperature = "188°";
+            // Check if weather info has been initialized
+            if (highTemperature != null && !highTemperature.isEmpty()) {
+                Paint temperaturePaint = temperaturePaint2;
+                if (highTemperature.length() > 3 || lowTemperature.length() > 3) {
+                    temperaturePaint = temperaturePaint3;
+                }
+                // centered
+                final float highOffsetX = bounds.centerX() - (temperaturePaint.measureText(highTemperature) / 2f);
+                // 4/5
+                final float lowOffsetX = ((bounds.width() / 5) * 4) - (temperaturePaint.measureText(lowTemperature) / 2f);
+
+                canvas.drawText(highTemperature, highOffsetX, weatherOffsetY, temperaturePaint);
+                canvas.drawText(lowTemperature, lowOffsetX, weatherOffsetY, temperaturePaint);
+
+                if (weatherBitmap != null) {
+                    // 1/5
+                    final float iconOffsetX = ((bounds.width() / 5)) - (weatherBitmap.getWidth() / 2f);
+                    // Icon is painted from the top. Text is painted from the bottom.
+                    // We need to position the center of the icon with the center of the text.
+                    Rect textBounds = new Rect();
+                    temperaturePaint.getTextBounds(highTemperature, 0, 1, textBounds);
+                    final float textCenter = textBounds.height() / 2;
+                    final float iconCenter = weatherBitmap.getHeight() / 2;
+                    final float textOffsetYCenter = weatherOffsetY - textCenter;
+                    // Guide lines for figuring out layout
+//                    canvas.drawLine(dividerOffsetStartX, textOffsetYCenter, dividerOffsetEndX,
+//                            textOffsetYCenter, dividerPaint);
+//                    canvas.drawLine(dividerOffsetStartX, weatherOffsetY, dividerOffsetEndX,
+//                            weatherOffsetY, dividerPaint);
+                    final float iconOffsetY = textOffsetYCenter - iconCenter;
+                    canvas.drawBitmap(weatherBitmap, iconOffsetX, iconOffsetY, temperaturePaint);
+                }
+            }
         }
 
         /**
@@ -442,18 +528,106 @@ public class WatchFace extends CanvasWatchFaceService {
         }
 
         /**
-         * Handle updating the time periodically in interactive mode.
+         * Handle updating the time periodically in interactive mode, at the next change of what
+         * is shown.
          */
         private void handleUpdateTimeMessage() {
-            invalidate();
+            handleFrameMessage();
             if (shouldTimerBeRunning()) {
                 long timeMs = System.currentTimeMillis();
-                long delayMs = INTERACTIVE_UPDATE_RATE_MS
-                        - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
+                long updateRateMs = getUpdateRateMs();
+                long delayMs = updateRateMs - (timeMs % updateRateMs);
                 mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
             }
         }
 
+        /**
+         * @return how often the time shown changes, seconds only being shown in interactive mode.
+         */
+        private long getUpdateRateMs() {
+            return mAmbient ? MINUTE_UPDATE_RATE_MS : INTERACTIVE_UPDATE_RATE_MS;
+        }
+
+        /**
+         * Asks for a frame, any thread.  Requests made before it is handled make a single frame.
+         *
+         * @param contentChanged whether something other than the time changed, so that the frame
+         *                       is drawn even if the time shown is the same.
+         */
+        private void requestFrame(boolean contentChanged) {
+            if (contentChanged) {
+                frameContentChanged = true;
+            }
+            if (!mUpdateTimeHandler.hasMessages(MSG_FRAME)) {
+                mUpdateTimeHandler.sendEmptyMessage(MSG_FRAME);
+            }
+        }
+
+        /**
+         * @return how many frames were drawn since the engine was created.
+         */
+        int getFramesDrawn() {
+            return framesDrawn;
+        }
+
+        /**
+         * @return how many frames were asked for but not drawn, as they would have shown what the
+         * last one did.
+         */
+        int getFramesSkipped() {
+            return framesSkipped;
+        }
+
+        /**
+         * Draws a frame unless it would show what the last one did.
+         */
+        private void handleFrameMessage() {
+            mUpdateTimeHandler.removeMessages(MSG_FRAME);
+            long timeUnit = System.currentTimeMillis() / getUpdateRateMs();
+            if (frameContentChanged || timeUnit != drawnTimeUnit) {
+                invalidate();
+            } else {
+                framesSkipped++;
+            }
+        }
+
+        /**
+         * Shows the weather the phone last sent, which the Data Layer keeps on the watch, for when
+         * there is none in {@link WeatherStore}.  The phone only sends weather that changed, so it
+         * is only asked for it if there is none.
+         */
+        private void loadWeatherData() {
+            Uri uri = new Uri.Builder()
+                    .scheme(PutDataRequest.WEAR_URI_SCHEME)
+                    .path(WatchListenerService.DATA_MAP_WEATHER)
+                    .build();
+            Wearable.DataApi.getDataItems(googleApiClient, uri)
+                    .setResultCallback(new ResultCallback<DataItemBuffer>() {
+                        @Override
+                        public void onResult(@NonNull DataItemBuffer dataItems) {
+                            DataMap dataMap = null;
+                            if (dataItems.getStatus().isSuccess() && dataItems.getCount() > 0) {
+                                dataMap = DataMapItem.fromDataItem(dataItems.get(0)).getDataMap();
+                            }
+                            dataItems.release();
+                            if (dataMap == null) {
+                                if (googleApiClient != null) {
+                                    getWeatherData();
+                                }
+                                return;
+                            }
+                            // Loading the icon blocks
+                            final DataMap weather = dataMap;
+                            new Thread(new Runnable() {
+                                @Override
+                                public void run() {
+                                    WatchListenerService.onWeatherData(WatchFace.this, weather);
+                                }
+                            }).start();
+                        }
+                    });
+        }
+
         private void getWeatherData() {
             PutDataMapRequest weatherDataMapRequest = PutDataMapRequest.create(DATA_MAP_WEATHER_REQUEST);
             DataMap dataMap = weatherDataMapRequest.getDataMap();
@@ -469,39 +643,27 @@ public class WatchFace extends CanvasWatchFaceService {
                                 Log.d(TAG, "Failed to send weather update request");
                             } else {
                                 Log.d(TAG, "Successfully sent weather update request");
+                                WeatherStore.setRequested(WatchFace.this);
                             }
                         }
                     });
         }
 
         private void removeDataApiListener() {
-            if (googleApiClient != null && googleApiClient.isConnected()) {
-                googleApiClient.disconnect();
+            if (googleApiClient != null) {
+                // Stays connected a while, for the next time the watch face shows
+                WearableConnection.get(WatchFace.this).release();
+                googleApiClient = null;
             }
         }
 
-        @Override
-        public void onConnected(@Nullable Bundle bundle) {
-            googleApiClient.connect();
-            getWeatherData();
-        }
-
-        @Override
-        public void onConnectionSuspended(int i) {
-            Log.d(TAG, "onConnectionSuspended: ");
-        }
-
-        @Override
-        public void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
-            Log.d(TAG, "onConnectionFailed: ");
-        }
-
         @Override
         public void onWeatherUpdateFinished(String high, String low, Bitmap bitmap) {
             highTemperature = high;
             lowTemperature = low;
             weatherBitmap = bitmap;
-            invalidate();
+            staticLayerInvalid = true;
+            requestFrame(true);
         }
     }
 }
@@ -1,10 +1,9 @@
 package com.example.android.sunshine.app;
 
+import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.util.Log;
 
-import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.wearable.Asset;
 import com.google.android.gms.wearable.DataEvent;
@@ -15,7 +14,6 @@ import com.google.android.gms.wearable.Wearable;
 import com.google.android.gms.wearable.WearableListenerService;
 
 import java.io.InputStream;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Receive weather updates from mobile and dispatch them to watch face
@@ -23,11 +21,13 @@ import java.util.concurrent.TimeUnit;
 public class WatchListenerService extends WearableListenerService {
     private static final String TAG = WatchListenerService.class.getSimpleName();
 
-    private static final String DATA_MAP_WEATHER = "/forecast";
+    static final String DATA_MAP_WEATHER = "/forecast";
     private static final String DATA_MAP_WEATHER_KEY_HIGH = "high";
     private static final String DATA_MAP_WEATHER_KEY_LOW = "low";
     private static final String DATA_MAP_WEATHER_KEY_ICON = "icon";
-    private static final long TIMEOUT_MS = 100;
+    private static final String DATA_MAP_WEATHER_KEY_ICON_DIGEST = "icon_digest";
+    // Only a cold start waits, the connection is usually kept warm by the watch face.
+    private static final long CONNECT_TIMEOUT_MS = 10 * 1000;
 
     private static WeatherUpdatedListener weatherUpdatedListener;
 
@@ -48,51 +48,72 @@ public class WatchListenerService extends WearableListenerService {
                 Log.d(TAG, "onDataChanged: " + path);
                 if (path.equals(DATA_MAP_WEATHER)) {
                     DataMapItem dataMapItem = DataMapItem.fromDataItem(dataEvent.getDataItem());
-                    DataMap dataMap = dataMapItem.getDataMap();
-                    String highTemperature = dataMap.getString(DATA_MAP_WEATHER_KEY_HIGH, "");
-                    String lowTemperature = dataMap.getString(DATA_MAP_WEATHER_KEY_LOW, "");
-                    Asset iconAsset = dataMap.getAsset(DATA_MAP_WEATHER_KEY_ICON);
-                    Bitmap bitmap = null;
-                    if (iconAsset != null) {
-                        bitmap = loadBitmapFromAsset(iconAsset);
-                    }
-
-                    if (weatherUpdatedListener != null) {
-                        weatherUpdatedListener.onWeatherUpdateFinished(highTemperature, lowTemperature, bitmap);
-                    }
-                    Log.d(TAG, "onDataChanged: high=" + highTemperature + " low=" + lowTemperature);
+                    onWeatherData(this, dataMapItem.getDataMap());
                 }
             }
         }
     }
 
     /**
-     * https://developer.android.com/training/wearables/data-layer/assets.html
-     * @return bitmap
+     * Hands the weather in {@code dataMap} to the watch face, and keeps it for the next start.
+     * Blocks while the icon loads, don't call it on the main thread.
      */
-    private Bitmap loadBitmapFromAsset(Asset asset) {
+    static void onWeatherData(Context context, DataMap dataMap) {
+        String highTemperature = dataMap.getString(DATA_MAP_WEATHER_KEY_HIGH, "");
+        String lowTemperature = dataMap.getString(DATA_MAP_WEATHER_KEY_LOW, "");
+        Bitmap bitmap = loadIcon(context, dataMap);
+        // The icon, if any, is in WeatherIconCache by now
+        String iconDigest = bitmap == null
+                ? null : dataMap.getString(DATA_MAP_WEATHER_KEY_ICON_DIGEST);
+        WeatherStore.save(context, highTemperature, lowTemperature, iconDigest);
 
-        final GoogleApiClient googleApiClient = new GoogleApiClient.Builder(this)
-                .addApi(Wearable.API)
-                .build();
-        googleApiClient.connect();
+        if (weatherUpdatedListener != null) {
+            weatherUpdatedListener.onWeatherUpdateFinished(highTemperature, lowTemperature, bitmap);
+        }
+        Log.d(TAG, "onWeatherData: high=" + highTemperature + " low=" + lowTemperature);
+    }
+
+    private static synchronized Bitmap loadIcon(Context context, DataMap dataMap) {
+        Asset iconAsset = dataMap.getAsset(DATA_MAP_WEATHER_KEY_ICON);
+        if (iconAsset == null) {
+            return null;
+        }
+        // An icon seen before needs neither fetching nor decoding.
+        String digest = dataMap.getString(DATA_MAP_WEATHER_KEY_ICON_DIGEST);
+        if (digest != null) {
+            Bitmap icon = WeatherIconCache.get(context, digest);
+            if (icon != null) {
+                return icon;
+            }
+        }
+        return loadBitmapFromAsset(context, iconAsset, digest);
+    }
 
-        ConnectionResult result =
-                googleApiClient.blockingConnect(TIMEOUT_MS, TimeUnit.MILLISECONDS);
-        if (!result.isSuccess()) {
+    /**
+     * https://developer.android.com/training/wearables/data-layer/assets.html
+     * @return bitmap, scaled and cached by {@link WeatherIconCache}
+     */
+    private static Bitmap loadBitmapFromAsset(Context context, Asset asset, String digest) {
+        WearableConnection connection = WearableConnection.get(context);
+        GoogleApiClient googleApiClient = connection.blockingAcquire(CONNECT_TIMEOUT_MS);
+        if (googleApiClient == null) {
             return null;
         }
         // convert asset into a file descriptor and block until it's ready
-        InputStream assetInputStream = Wearable.DataApi.getFdForAsset(
-                googleApiClient, asset).await().getInputStream();
-        googleApiClient.disconnect();
+        InputStream assetInputStream;
+        try {
+            assetInputStream = Wearable.DataApi.getFdForAsset(
+                    googleApiClient, asset).await().getInputStream();
+        } finally {
+            connection.release();
+        }
 
         if (assetInputStream == null) {
             Log.w(TAG, "Requested an unknown Asset.");
             return null;
         }
         // decode the stream into a bitmap
-        return BitmapFactory.decodeStream(assetInputStream);
+        return WeatherIconCache.put(context, digest, assetInputStream);
     }
 
 }
@@ -0,0 +1,126 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The one Wearable API client of the process, shared by reference count between the watch face
+ * and the listener service.  It stays connected while anyone holds it and for a while after, so
+ * that an update from the phone doesn't pay for a new connection to fetch its icon.
+ */
+class WearableConnection implements
+        GoogleApiClient.ConnectionCallbacks,
+        GoogleApiClient.OnConnectionFailedListener {
+    private static final String TAG = WearableConnection.class.getSimpleName();
+
+    // How long the client stays connected once nobody holds it.
+    private static final long IDLE_TIMEOUT_MS = 60 * 1000;
+
+    private static WearableConnection sInstance;
+
+    private final GoogleApiClient mClient;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private int mReferences;
+
+    private final Runnable mDisconnect = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (WearableConnection.this) {
+                if (mReferences == 0 && (mClient.isConnected() || mClient.isConnecting())) {
+                    Log.d(TAG, "Idle, disconnecting");
+                    mClient.disconnect();
+                }
+            }
+        }
+    };
+
+    private WearableConnection(Context context) {
+        mClient = new GoogleApiClient.Builder(context)
+                .addConnectionCallbacks(this)
+                .addOnConnectionFailedListener(this)
+                .addApi(Wearable.API)
+                .build();
+    }
+
+    static synchronized WearableConnection get(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearableConnection(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Takes a reference to the client, and starts connecting it if it isn't.  Calls made on it
+     * before it is connected are queued until it is.  Every call must be paired with a
+     * {@link #release()}.
+     */
+    synchronized GoogleApiClient acquire() {
+        mReferences++;
+        mHandler.removeCallbacks(mDisconnect);
+        if (!mClient.isConnected() && !mClient.isConnecting()) {
+            mClient.connect();
+        }
+        return mClient;
+    }
+
+    /**
+     * Takes a reference to the client and waits until it is connected.  Not for the main thread.
+     *
+     * @return the connected client, to be paired with a {@link #release()}, or null if it couldn't
+     * connect in time, in which case there is nothing to release.
+     */
+    GoogleApiClient blockingAcquire(long timeoutMs) {
+        GoogleApiClient client = acquire();
+        if (client.isConnected()) {
+            return client;
+        }
+        // Waits for the connection already under way, if any.
+        ConnectionResult result = client.blockingConnect(timeoutMs, TimeUnit.MILLISECONDS);
+        if (!result.isSuccess()) {
+            Log.d(TAG, "Failed to connect: " + result);
+            release();
+            return null;
+        }
+        return client;
+    }
+
+    /**
+     * Gives back a reference taken by {@link #acquire()} or {@link #blockingAcquire(long)}.
+     */
+    synchronized void release() {
+        if (mReferences == 0) {
+            throw new IllegalStateException("Released more than acquired");
+        }
+        mReferences--;
+        if (mReferences == 0) {
+            mHandler.postDelayed(mDisconnect, IDLE_TIMEOUT_MS);
+        }
+    }
+
+    @Override
+    public void onConnected(@Nullable Bundle bundle) {
+        Log.d(TAG, "onConnected");
+    }
+
+    @Override
+    public void onConnectionSuspended(int cause) {
+        // The client reconnects by itself, queued calls wait for it.
+        Log.d(TAG, "onConnectionSuspended: " + cause);
+    }
+
+    @Override
+    public void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
+        Log.d(TAG, "onConnectionFailed: " + connectionResult);
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Weather icons decoded and scaled to the size the watch face draws them at, by the digest the
+ * phone sends along with each icon.  Kept in memory, and on disk so that a restarted process
+ * doesn't fetch and decode them again.
+ */
+class WeatherIconCache {
+    private static final String TAG = WeatherIconCache.class.getSimpleName();
+
+    private static final String DIRECTORY = "weather_icons";
+    // The phone has fewer icons than that
+    private static final int MAX_FILES = 16;
+    private static final int MAX_MEMORY_BYTES = 256 * 1024;
+
+    private static final LruCache<String, Bitmap> sIcons = new LruCache<String, Bitmap>(MAX_MEMORY_BYTES) {
+        @Override
+        protected int sizeOf(String digest, Bitmap icon) {
+            return icon.getByteCount();
+        }
+    };
+
+    private static File sDirectory;
+
+    /**
+     * @return the icon of {@code digest}, or null if it isn't cached.
+     */
+    static synchronized Bitmap get(Context context, String digest) {
+        Bitmap icon = sIcons.get(digest);
+        if (icon != null) {
+            return icon;
+        }
+        File file = new File(getDirectory(context), digest + ".png");
+        if (!file.isFile()) {
+            return null;
+        }
+        icon = BitmapFactory.decodeFile(file.getPath());
+        if (icon == null) {
+            return null;
+        }
+        // Kept by recency of use for pruning
+        file.setLastModified(System.currentTimeMillis());
+        sIcons.put(digest, icon);
+        return icon;
+    }
+
+    /**
+     * Decodes an icon to the size the watch face draws it at, and caches it if it has a digest.
+     *
+     * @param digest the digest the phone sent with the icon, or null if it sent none.
+     * @return the icon, or null if it can't be decoded.
+     */
+    static synchronized Bitmap put(Context context, String digest, InputStream in) {
+        byte[] png;
+        try {
+            png = readFully(in);
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't read icon", e);
+            return null;
+        }
+        Bitmap icon = decode(png, getIconSize(context));
+        if (icon == null || digest == null) {
+            return icon;
+        }
+        sIcons.put(digest, icon);
+        write(getDirectory(context), digest, icon);
+        return icon;
+    }
+
+    private static int getIconSize(Context context) {
+        return context.getResources().getDimensionPixelSize(R.dimen.weather_icon_size);
+    }
+
+    private static Bitmap decode(byte[] png, int size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(png, 0, png.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        // Subsampling on decode gets close without allocating the full size first, the scaling
+        // does the rest.
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = 1;
+        while (options.outWidth / (options.inSampleSize * 2) >= size
+                && options.outHeight / (options.inSampleSize * 2) >= size) {
+            options.inSampleSize *= 2;
+        }
+        Bitmap decoded = BitmapFactory.decodeByteArray(png, 0, png.length, options);
+        if (decoded == null || (decoded.getWidth() == size && decoded.getHeight() == size)) {
+            return decoded;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(decoded, size, size, true);
+        if (scaled != decoded) {
+            decoded.recycle();
+        }
+        return scaled;
+    }
+
+    /**
+     * @return the directory of the icons at the current size, once those of any other size are
+     * gone.
+     */
+    private static File getDirectory(Context context) {
+        if (sDirectory != null) {
+            return sDirectory;
+        }
+        File root = new File(context.getCacheDir(), DIRECTORY);
+        String size = Integer.toString(getIconSize(context));
+        File[] sizes = root.listFiles();
+        if (sizes != null) {
+            for (File directory : sizes) {
+                if (!directory.getName().equals(size)) {
+                    delete(directory);
+                }
+            }
+        }
+        sDirectory = new File(root, size);
+        if (!sDirectory.isDirectory() && !sDirectory.mkdirs()) {
+            Log.w(TAG, "Couldn't create " + sDirectory);
+        }
+        return sDirectory;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void write(File directory, String digest, Bitmap icon) {
+        File file = new File(directory, digest + ".png");
+        // Written aside and renamed, so that a process killed halfway leaves no truncated icon.
+        File temp = new File(file.getPath() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            icon.compress(Bitmap.CompressFormat.PNG, 100, out);
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                temp.delete();
+            }
+        } catch (IOException e) {
+            // Only the disk copy is lost, the icon is kept in memory.
+            Log.w(TAG, "Couldn't write " + file, e);
+            temp.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Already failed
+                }
+            }
+        }
+        prune(directory);
+    }
+
+    /**
+     * Deletes the least recently used icons beyond MAX_FILES.
+     */
+    private static void prune(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null || files.length <= MAX_FILES) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lhs.lastModified();
+                long rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? 1 : (lhsModified == rhsModified ? 0 : -1);
+            }
+        });
+        for (int i = MAX_FILES; i < files.length; i++) {
+            files[i].delete();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The last weather the phone sent, kept on the watch so that the watch face shows it as soon as
+ * it starts, without waiting for the phone.  The icon itself is kept by {@link WeatherIconCache},
+ * this only keeps its digest.
+ */
+class WeatherStore {
+    private static final String PREFERENCES = "weather";
+    private static final String KEY_HIGH = "high";
+    private static final String KEY_LOW = "low";
+    private static final String KEY_ICON_DIGEST = "icon_digest";
+    private static final String KEY_CHECKED = "checked";
+
+    // The phone syncs every 3 hours, and sends what changed
+    private static final long STALE_MS = TimeUnit.HOURS.toMillis(3);
+
+    static class Weather {
+        final String high;
+        final String low;
+        // Null if the phone sent no icon, or no digest with it
+        final String iconDigest;
+        // When the phone last sent the weather or was asked for it
+        final long checked;
+
+        Weather(String high, String low, String iconDigest, long checked) {
+            this.high = high;
+            this.low = low;
+            this.iconDigest = iconDigest;
+            this.checked = checked;
+        }
+    }
+
+    /**
+     * @return the weather last saved, or null if there is none.
+     */
+    static Weather load(Context context) {
+        SharedPreferences preferences = getPreferences(context);
+        String high = preferences.getString(KEY_HIGH, null);
+        if (high == null) {
+            return null;
+        }
+        return new Weather(
+                high,
+                preferences.getString(KEY_LOW, ""),
+                preferences.getString(KEY_ICON_DIGEST, null),
+                preferences.getLong(KEY_CHECKED, 0));
+    }
+
+    static void save(Context context, String high, String low, String iconDigest) {
+        getPreferences(context).edit()
+                .putString(KEY_HIGH, high)
+                .putString(KEY_LOW, low)
+                .putString(KEY_ICON_DIGEST, iconDigest)
+                .putLong(KEY_CHECKED, System.currentTimeMillis())
+                .apply();
+    }
+
+    /**
+     * Records that the phone was asked for the weather.  It only sends weather that changed, so
+     * having asked is as good as having been answered.
+     */
+    static void setRequested(Context context) {
+        getPreferences(context).edit()
+                .putLong(KEY_CHECKED, System.currentTimeMillis())
+                .apply();
+    }
+
+    /**
+     * @return whether the phone should be asked for {@code weather}, as it is missing or old.
+     */
+    static boolean isStale(Weather weather) {
+        if (weather == null) {
+            return true;
+        }
+        long age = System.currentTimeMillis() - weather.checked;
+        // A clock set back makes it stale too
+        return age < 0 || age > STALE_MS;
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+}